@@ -0,0 +1,193 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Base class of the accumulators which update their measures with every line of the label file. Separate parts of
+ * the file can be read into separate accumulators and merged afterwards, in the order of the parts. The lines are
+ * counted, so that the lines with wrong ids or labels can be reported with their line number in the whole file
+ * once the parts have been merged.
+ * The measures can also be saved to a file of partial scores, so that the parts read by separate processes or
+ * machines can be merged into the final scores without reading the label files again. The file starts with a
+ * header, the bytes "PTSA", a format version, the kind of accumulator and the number of traits, followed by the
+ * measures of the accumulator.
+ * @author Firoj Alam
+ */
+public abstract class Accumulator<T extends Accumulator<T>> implements InstanceReader.RowHandler {
+
+    private static final int MAGIC = 0x50545341;
+    private static final int VERSION = 2;
+
+    protected int traits = -1;
+    private int lines;
+    private boolean deferErrors;
+    private final ArrayList<Integer> badLines = new ArrayList<Integer>();
+
+    /**
+     * @return the number of traits, -1 if no instance was read yet
+     */
+    public int traits() {
+        return traits;
+    }
+
+    /**
+     * @return an empty accumulator for another part of the input, with the same number of traits and with
+     * deferred error reports
+     */
+    public abstract T emptyCopy();
+
+    /**
+     * Adds the measures of the part of the input following this part.
+     * @param other accumulator of the following part
+     */
+    public abstract void merge(T other);
+
+    /**
+     * @return the byte identifying the kind of accumulator in a file of partial scores
+     */
+    protected abstract int kind();
+
+    /**
+     * Writes the measures, called only when the number of traits is known.
+     * @param out output
+     * @throws IOException if the measures can not be written
+     */
+    protected abstract void writeState(DataOutput out) throws IOException;
+
+    /**
+     * Reads measures written by {@link #writeState(DataOutput)}.
+     * @param traits number of traits
+     * @param in input
+     * @return an accumulator holding the measures
+     * @throws IOException if the measures can not be read
+     */
+    protected abstract T readState(int traits, DataInput in) throws IOException;
+
+    /**
+     * Saves the measures to a file of partial scores.
+     * @param fileName output file
+     * @throws IOException if the file can not be written
+     */
+    public void save(String fileName) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(kind());
+            out.writeInt(traits);
+            if (traits >= 0) {
+                writeState(out);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Merges the measures saved in a file of partial scores, as the part of the input following this part.
+     * @param fileName file written by {@link #save(String)}
+     * @throws IOException if the file can not be read or does not hold partial scores of this kind
+     */
+    public void mergeSaved(String fileName) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(fileName + " is not a file of partial scores.");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException(fileName + " has partial scores of version " + version + ", expected version " + VERSION + ".");
+            }
+            if (in.readUnsignedByte() != kind()) {
+                throw new IOException(fileName + " has partial scores of another kind, please check the -n option.");
+            }
+            int savedTraits = in.readInt();
+            if (savedTraits >= 0) {
+                if (traits >= 0 && savedTraits != traits) {
+                    throw new IOException(fileName + " has partial scores of " + savedTraits + " traits, expected " + traits + ".");
+                }
+                merge(readState(savedTraits, in));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Counts a line of the input, to be called for every line.
+     */
+    protected void countLine() {
+        lines++;
+    }
+
+    /**
+     * Reports the current line as a line with wrong ids or labels, right away or when {@link #reportErrors()}
+     * is called.
+     */
+    protected void badLine() {
+        if (deferErrors) {
+            badLines.add(lines);
+        } else {
+            System.err.println("\nPlease check instance ids and labels in your input file at line " + lines);
+        }
+    }
+
+    /**
+     * Adds the line count and the wrong lines of the following part, to be called by {@link #merge(Accumulator)}.
+     */
+    protected void mergeLines(T other) {
+        Accumulator<T> part = other;
+        for (int i = 0; i < part.badLines.size(); i++) {
+            badLines.add(lines + part.badLines.get(i));
+        }
+        lines += part.lines;
+    }
+
+    /**
+     * @param defer whether wrong lines are kept until {@link #reportErrors()} is called
+     */
+    public void setDeferErrors(boolean defer) {
+        this.deferErrors = defer;
+    }
+
+    /**
+     * Prints the deferred wrong lines.
+     */
+    public void reportErrors() {
+        for (int i = 0; i < badLines.size(); i++) {
+            System.err.println("\nPlease check instance ids and labels in your input file at line " + badLines.get(i));
+        }
+        badLines.clear();
+    }
+
+    /**
+     * @return the deferred wrong lines, not yet reported
+     */
+    public ArrayList<Integer> getBadLines() {
+        return badLines;
+    }
+
+    /**
+     * @return the number of lines read
+     */
+    public int getLines() {
+        return lines;
+    }
+}
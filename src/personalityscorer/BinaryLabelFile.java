@@ -0,0 +1,345 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The binary form of a label file. Each instance is a fixed size record, so a file is read by mapping it and
+ * decoding the records in place. All numbers are big-endian.
+ * <pre>
+ * header, 32 bytes
+ *   0  int    magic, "PTSB"
+ *   4  byte   version, 1
+ *   5  byte   kind, 0 for labels and 1 for numeric values
+ *   6  short  number of traits
+ *   8  long   number of instances
+ *   16 byte   number of distinct labels, at most 4
+ *   17 byte[4] the labels, the label of code c is byte 17 + c
+ *   21 reserved, 0
+ * records of labels, 16 + 2 * ((2 * traits + 7) / 8) bytes
+ *   long hi, long lo  the id, 32 hex digits as 128 bits
+ *   reference labels, 2 bits per trait, trait t in bits 2 * (t % 4) of byte t / 4
+ *   predicted labels, as the reference labels
+ * records of numeric values, 16 + 8 * traits bytes
+ *   long hi, long lo  the id
+ *   float[traits]     reference values
+ *   float[traits]     predicted values
+ * </pre>
+ * The id is stored once, as in the label file the reference and the predicted ids are the same. Numeric values are
+ * rounded to floats, so their measures may differ from those of the label file in the last digits.
+ * @author Firoj Alam
+ */
+public class BinaryLabelFile {
+
+    public static final int MAGIC = 0x50545342;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int MAX_LABELS = 4;
+    private static final int KIND_LABELS = 0;
+    private static final int KIND_NUMERIC = 1;
+    private static final int WINDOW_SIZE = 64 << 20;
+
+    private final boolean numeric;
+    private final int traits;
+    private final long rows;
+    private final byte[] alphabet;
+    private final int codeBytes;
+    private final int recordSize;
+
+    private BinaryLabelFile(boolean numeric, int traits, long rows, byte[] alphabet) {
+        this.numeric = numeric;
+        this.traits = traits;
+        this.rows = rows;
+        this.alphabet = alphabet;
+        this.codeBytes = (2 * traits + 7) / 8;
+        this.recordSize = 16 + (numeric ? 8 * traits : 2 * codeBytes);
+    }
+
+    /**
+     * @param fileName a label file
+     * @return whether the file starts with the magic number of the binary form
+     * @throws IOException if the file can not be read
+     */
+    public static boolean isBinary(String fileName) throws IOException {
+        FileInputStream in = new FileInputStream(fileName);
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            FileChannel channel = in.getChannel();
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Converts a label file to the binary form.
+     * @param textFile label file
+     * @param binaryFile output file
+     * @param numeric whether the label file holds numeric values
+     * @return the number of instances written
+     * @throws IOException if a file can not be read or written, or an instance can not be stored in binary form
+     */
+    public static long convert(String textFile, String binaryFile, final boolean numeric) throws IOException {
+        File file = new File(binaryFile).getAbsoluteFile();
+        // the binary file only appears once it is complete, a failed conversion leaves no file behind
+        File partial = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        boolean written = false;
+        FileOutputStream fos = new FileOutputStream(partial);
+        try {
+            final FileChannel out = fos.getChannel();
+            final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+            final long[] key = new long[2];
+            final byte[] alphabet = new byte[MAX_LABELS];
+            final int[] header = {-1, 0};
+            final long[] count = new long[1];
+            final IOException[] failure = new IOException[1];
+            out.position(HEADER_SIZE);
+            new InstanceReader().read(textFile, new InstanceReader.RowHandler() {
+                private final StringBuilder value = new StringBuilder();
+                private double[] values;
+
+                @Override
+                public void row(ByteBuffer in, int[] start, int[] end, int line) {
+                    if (failure[0] != null) {
+                        return;
+                    }
+                    int rs = start[InstanceReader.REF_LABELS], re = end[InstanceReader.REF_LABELS];
+                    int ps = start[InstanceReader.PRED_LABELS], pe = end[InstanceReader.PRED_LABELS];
+                    int refLen = numeric ? InstanceReader.countValues(in, rs, re) : re - rs;
+                    int predLen = numeric ? InstanceReader.countValues(in, ps, pe) : pe - ps;
+                    if (header[0] < 0) {
+                        header[0] = refLen;
+                        values = new double[refLen];
+                    }
+                    if (refLen != header[0] || predLen != header[0]) {
+                        System.err.println("\nPlease check instance ids and labels in your input file at line " + line);
+                        return;
+                    }
+                    int traits = header[0];
+                    try {
+                        if (!IdTable.pack(in, start[InstanceReader.REF_ID], end[InstanceReader.REF_ID], key)) {
+                            throw new IOException("The id at line " + line + " is not made of 32 lowercase hex digits,"
+                                    + " it can not be stored in binary form.");
+                        }
+                        int size = 16 + (numeric ? 8 * traits : 2 * ((2 * traits + 7) / 8));
+                        if (buf.remaining() < size) {
+                            flush(out, buf);
+                        }
+                        buf.putLong(key[0]).putLong(key[1]);
+                        if (numeric) {
+                            InstanceReader.parseValues(in, rs, re, values, value);
+                            for (int col = 0; col < traits; col++) {
+                                buf.putFloat((float) values[col]);
+                            }
+                            InstanceReader.parseValues(in, ps, pe, values, value);
+                            for (int col = 0; col < traits; col++) {
+                                buf.putFloat((float) values[col]);
+                            }
+                        } else {
+                            putCodes(in, rs, traits, buf, alphabet, header, line);
+                            putCodes(in, ps, traits, buf, alphabet, header, line);
+                        }
+                        count[0]++;
+                    } catch (IOException ex) {
+                        failure[0] = ex;
+                    } catch (NumberFormatException ex) {
+                        failure[0] = new IOException("The value at line " + line + " is not a number,"
+                                + " it can not be stored in binary form.", ex);
+                    }
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            flush(out, buf);
+            buf.putInt(MAGIC).put((byte) VERSION).put((byte) (numeric ? KIND_NUMERIC : KIND_LABELS));
+            buf.putShort((short) Math.max(header[0], 0)).putLong(count[0]).put((byte) header[1]).put(alphabet);
+            while (buf.position() < HEADER_SIZE) {
+                buf.put((byte) 0);
+            }
+            out.position(0);
+            flush(out, buf);
+            fos.close();
+            Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            written = true;
+            return count[0];
+        } finally {
+            fos.close();
+            if (!written) {
+                partial.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the 2-bit codes of the labels of one side of an instance, new labels are added to the alphabet.
+     */
+    private static void putCodes(ByteBuffer in, int s, int traits, ByteBuffer buf, byte[] alphabet, int[] header,
+            int line) throws IOException {
+        int packed = 0;
+        for (int col = 0; col < traits; col++) {
+            byte label = in.get(s + col);
+            int code = 0;
+            while (code < header[1] && alphabet[code] != label) {
+                code++;
+            }
+            if (code == header[1]) {
+                if (code == MAX_LABELS) {
+                    throw new IOException("The labels at line " + line + " make more than " + MAX_LABELS
+                            + " distinct labels, they can not be stored in binary form.");
+                }
+                alphabet[code] = label;
+                header[1]++;
+            }
+            packed |= code << (2 * (col & 3));
+            if ((col & 3) == 3 || col == traits - 1) {
+                buf.put((byte) packed);
+                packed = 0;
+            }
+        }
+    }
+
+    private static void flush(FileChannel out, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Reads the header of a binary label file.
+     */
+    private static BinaryLabelFile header(String fileName, FileChannel channel, boolean numeric) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            throw new IOException(fileName + " is not a binary label file.");
+        }
+        ByteBuffer h = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (h.getInt(0) != MAGIC) {
+            throw new IOException(fileName + " is not a binary label file.");
+        }
+        if (h.get(4) != VERSION) {
+            throw new IOException(fileName + " is a binary label file of version " + h.get(4) + ", expected version " + VERSION + ".");
+        }
+        if ((h.get(5) == KIND_NUMERIC) != numeric) {
+            throw new IOException(fileName + " holds " + (numeric ? "labels" : "numeric values") + ", please check the -n option.");
+        }
+        byte[] alphabet = new byte[MAX_LABELS];
+        for (int code = 0; code < MAX_LABELS; code++) {
+            alphabet[code] = h.get(17 + code);
+        }
+        BinaryLabelFile file = new BinaryLabelFile(numeric, h.getShort(6), h.getLong(8), alphabet);
+        if (channel.size() < HEADER_SIZE + file.rows * file.recordSize) {
+            throw new IOException(fileName + " is shorter than its " + file.rows + " instances.");
+        }
+        return file;
+    }
+
+    /**
+     * Reads a binary label file into columns.
+     * @param fileName binary label file
+     * @param numeric whether the file holds numeric values
+     * @return the columns
+     * @throws IOException if the file can not be read or is not a binary label file of this kind
+     */
+    public static InstanceColumns readColumns(String fileName, boolean numeric) throws IOException {
+        InstanceColumns columns = new InstanceColumns(numeric);
+        read(fileName, numeric, columns, null);
+        return columns;
+    }
+
+    /**
+     * Reads a binary label file into an accumulator.
+     * @param fileName binary label file
+     * @param acc label or numeric accumulator
+     * @throws IOException if the file can not be read or is not a binary label file of this kind
+     */
+    public static void read(String fileName, Accumulator<?> acc) throws IOException {
+        read(fileName, acc instanceof NumericAccumulator, null, acc);
+    }
+
+    /**
+     * Decodes the records window by window, into the columns or else into the accumulator.
+     */
+    private static void read(String fileName, boolean numeric, InstanceColumns columns, Accumulator<?> acc)
+            throws IOException {
+        FileInputStream in = new FileInputStream(fileName);
+        try {
+            FileChannel channel = in.getChannel();
+            BinaryLabelFile file = header(fileName, channel, numeric);
+            int traits = file.traits;
+            byte[] ref = new byte[traits];
+            byte[] pred = new byte[traits];
+            double[] refValues = new double[traits];
+            double[] predValues = new double[traits];
+            byte[] line = new byte[2 * traits];
+            ByteBuffer lineBuf = ByteBuffer.wrap(line);
+            int[] start = new int[InstanceReader.COLUMNS];
+            int[] end = new int[InstanceReader.COLUMNS];
+            start[InstanceReader.PRED_LABELS] = end[InstanceReader.REF_LABELS] = traits;
+            end[InstanceReader.PRED_LABELS] = 2 * traits;
+            long perWindow = Math.max(1, WINDOW_SIZE / file.recordSize);
+            for (long first = 0; first < file.rows; first += perWindow) {
+                int count = (int) Math.min(perWindow, file.rows - first);
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + first * file.recordSize, (long) count * file.recordSize);
+                for (int r = 0; r < count; r++) {
+                    int p = r * file.recordSize + 16;
+                    if (numeric) {
+                        for (int col = 0; col < traits; col++) {
+                            refValues[col] = buf.getFloat(p + 4 * col);
+                            predValues[col] = buf.getFloat(p + 4 * (traits + col));
+                        }
+                        if (columns != null) {
+                            columns.addValues(refValues, predValues);
+                        } else {
+                            ((NumericAccumulator) acc).addValues(refValues, predValues);
+                        }
+                    } else {
+                        file.decode(buf, p, ref);
+                        file.decode(buf, p + file.codeBytes, pred);
+                        if (columns != null) {
+                            columns.addLabels(ref, pred);
+                        } else {
+                            System.arraycopy(ref, 0, line, 0, traits);
+                            System.arraycopy(pred, 0, line, traits, traits);
+                            acc.row(lineBuf, start, end, (int) (first + r + 1));
+                        }
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes the 2-bit codes of one side of a record into labels.
+     */
+    private void decode(ByteBuffer buf, int p, byte[] labels) {
+        for (int col = 0; col < traits; col += 4) {
+            int packed = buf.get(p + (col >> 2));
+            int n = Math.min(4, traits - col);
+            for (int k = 0; k < n; k++) {
+                labels[col + k] = alphabet[(packed >>> (2 * k)) & 3];
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Poisson bootstrap over weighted patterns. The instances are grouped into patterns, e.g. the distinct rows of
+ * labels, each with the number of instances it stands for. A resample gives every instance a Poisson(1) weight;
+ * the weight of a pattern of c instances is then a single Poisson(c) draw, so a resample only reweights the
+ * patterns and the measures are computed from the reweighted counts, the instances are never copied.
+ * The resamples are computed in parallel on a fork/join pool. Every resample has its own random generator, split
+ * from the seed in the order of the resamples, so the intervals do not depend on the number of threads.
+ * @author Firoj Alam
+ */
+public class Bootstrap {
+
+    public static final long DEFAULT_SEED = 42L;
+
+    private static final int TASK_SIZE = 16;
+
+    private final int resamples;
+    private final long seed;
+    private final ForkJoinPool pool;
+
+    /**
+     * The measures computed on every resample.
+     */
+    public interface Statistic {
+
+        /**
+         * Computes the measures from reweighted patterns. Called from several threads at once.
+         * @param weights weight of each pattern in the resample
+         * @return the measures
+         */
+        double[] compute(long[] weights);
+    }
+
+    /**
+     * @param resamples number of resamples
+     * @param seed seed of the random generators
+     * @param threads number of worker threads
+     */
+    public Bootstrap(int resamples, long seed, int threads) {
+        if (resamples < 1) {
+            throw new IllegalArgumentException("The number of resamples must be positive.");
+        }
+        this.resamples = resamples;
+        this.seed = seed;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Computes the measures on every resample.
+     * @param means expected weight of each pattern, i.e. the number of instances it stands for
+     * @param stat the measures
+     * @return the measures of resample b in row b
+     */
+    public double[][] run(double[] means, Statistic stat) {
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] rngs = new SplittableRandom[resamples];
+        for (int b = 0; b < resamples; b++) {
+            rngs[b] = root.split();
+        }
+        double[][] values = new double[resamples][];
+        pool.invoke(new ResampleTask(means, stat, rngs, values, 0, resamples));
+        return values;
+    }
+
+    /**
+     * Percentile interval of one measure. Resamples where the measure is not a number are left out.
+     * @param values measures of the resamples, as returned by {@link #run(double[], Statistic)}
+     * @param measure index of the measure
+     * @param level confidence level, e.g. 0.95
+     * @return the lower and the upper bound, NaN if the measure is never a number
+     */
+    public static double[] interval(double[][] values, int measure, double level) {
+        double[] v = new double[values.length];
+        int n = 0;
+        for (int b = 0; b < values.length; b++) {
+            double x = values[b][measure];
+            if (!Double.isNaN(x)) {
+                v[n++] = x;
+            }
+        }
+        if (n == 0) {
+            return new double[]{Double.NaN, Double.NaN};
+        }
+        Arrays.sort(v, 0, n);
+        double alpha = (1 - level) / 2;
+        return new double[]{quantile(v, n, alpha), quantile(v, n, 1 - alpha)};
+    }
+
+    /**
+     * Quantile of sorted values, interpolated linearly between the two closest ranks.
+     */
+    private static double quantile(double[] sorted, int n, double q) {
+        double h = (n - 1) * q;
+        int lo = (int) Math.floor(h);
+        int hi = Math.min(lo + 1, n - 1);
+        return sorted[lo] + (h - lo) * (sorted[hi] - sorted[lo]);
+    }
+
+    /**
+     * Draws from the Poisson distribution, by inversion for small means and otherwise by the transformed
+     * rejection method PTRS of Hormann (1993), whose cost does not grow with the mean.
+     * @param rng random generator
+     * @param mean the mean
+     * @return the number drawn
+     */
+    public static long poisson(SplittableRandom rng, double mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        if (mean < 10) {
+            double limit = Math.exp(-mean);
+            double prod = rng.nextDouble();
+            long k = 0;
+            while (prod > limit) {
+                prod *= rng.nextDouble();
+                k++;
+            }
+            return k;
+        }
+        double slam = Math.sqrt(mean);
+        double loglam = Math.log(mean);
+        double b = 0.931 + 2.53 * slam;
+        double a = -0.059 + 0.02483 * b;
+        double invalpha = 1.1239 + 1.1328 / (b - 3.4);
+        double vr = 0.9277 - 3.6224 / (b - 2);
+        while (true) {
+            double u = rng.nextDouble() - 0.5;
+            double v = rng.nextDouble();
+            double us = 0.5 - Math.abs(u);
+            long k = (long) Math.floor((2 * a / us + b) * u + mean + 0.43);
+            if (us >= 0.07 && v <= vr) {
+                return k;
+            }
+            if (k < 0 || (us < 0.013 && v > us)) {
+                continue;
+            }
+            if (Math.log(v) + Math.log(invalpha) - Math.log(a / (us * us) + b) <= -mean + k * loglam - logGamma(k + 1)) {
+                return k;
+            }
+        }
+    }
+
+    private static final double[] STIRLING = {8.333333333333333e-02, -2.777777777777778e-03,
+        7.936507936507937e-04, -5.952380952380952e-04, 8.417508417508418e-04, -1.917526917526918e-03,
+        6.410256410256410e-03, -2.955065359477124e-02, 1.796443723688307e-01, -1.39243221690590e+00};
+
+    /**
+     * Logarithm of the gamma function by the Stirling series, shifted up to 7 for small arguments.
+     */
+    private static double logGamma(double x) {
+        if (x == 1.0 || x == 2.0) {
+            return 0.0;
+        }
+        double x0 = x;
+        int n = 0;
+        if (x <= 7.0) {
+            n = (int) (7 - x);
+            x0 = x + n;
+        }
+        double x2 = 1.0 / (x0 * x0);
+        double gl0 = STIRLING[9];
+        for (int k = 8; k >= 0; k--) {
+            gl0 = gl0 * x2 + STIRLING[k];
+        }
+        double gl = gl0 / x0 + 0.5 * Math.log(2 * Math.PI) + (x0 - 0.5) * Math.log(x0) - x0;
+        for (int k = 1; k <= n; k++) {
+            x0 -= 1.0;
+            gl -= Math.log(x0);
+        }
+        return gl;
+    }
+
+    /**
+     * Computes a run of resamples, splitting it in halves which are computed in parallel.
+     */
+    private static class ResampleTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final double[] means;
+        private final Statistic stat;
+        private final SplittableRandom[] rngs;
+        private final double[][] values;
+        private final int from;
+        private final int to;
+
+        ResampleTask(double[] means, Statistic stat, SplittableRandom[] rngs, double[][] values, int from, int to) {
+            this.means = means;
+            this.stat = stat;
+            this.rngs = rngs;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                long[] weights = new long[means.length];
+                for (int b = from; b < to; b++) {
+                    for (int k = 0; k < means.length; k++) {
+                        weights[k] = poisson(rngs[b], means[k]);
+                    }
+                    values[b] = stat.compute(weights);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ResampleTask(means, stat, rngs, values, from, mid),
+                    new ResampleTask(means, stat, rngs, values, mid, to));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Scores predictions for a program which keeps the scorer running as its co-process, e.g., a training script
+ * which scores after every epoch. The program writes requests to the input of the scorer and reads the answers
+ * from its output, one answer per request and in the same order. A request is the length of the predictions in
+ * bytes, as a 4-byte big-endian integer, followed by the predictions: the lines of a label file, or with a
+ * reference file the lines of ids and predicted labels. An answer is the length of the JSON object of
+ * {@link PayloadScorer} in bytes, in the same form, followed by the object in UTF-8; predictions which can not be
+ * scored are answered with an object holding an error message. The scorer stops at the end of its input.
+ * @author Firoj Alam
+ */
+public class CoProcess {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final PayloadScorer scorer;
+
+    /**
+     * @param numeric whether the predictions hold numeric values
+     * @param gold join which has read the reference file, null if the requests send whole label files
+     */
+    public CoProcess(boolean numeric, IdJoin gold) {
+        this.scorer = new PayloadScorer(numeric, gold);
+    }
+
+    /**
+     * Answers the requests until the end of the input.
+     * @param in the requests
+     * @param out receives the answers, flushed after each answer
+     * @return the number of requests answered
+     * @throws IOException if the requests can not be read or the answers can not be written, or a request ends
+     * before its predictions
+     */
+    public int run(InputStream in, OutputStream out) throws IOException {
+        DataInputStream requests = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        DataOutputStream answers = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        byte[] payload = new byte[BUFFER_SIZE];
+        int count = 0;
+        while (true) {
+            int length;
+            try {
+                length = requests.readInt();
+            } catch (EOFException ex) {
+                return count;
+            }
+            if (length < 0) {
+                throw new IOException("Request " + (count + 1) + " has a negative length.");
+            }
+            if (length > payload.length) {
+                payload = new byte[Math.max(length, payload.length + (payload.length >> 1))];
+            }
+            requests.readFully(payload, 0, length);
+            String json;
+            try {
+                json = scorer.score(new ByteArrayInputStream(payload, 0, length));
+                if (json == null) {
+                    json = PayloadScorer.error("Please check the format of your predictions. No instance could be scored.");
+                }
+            } catch (IOException ex) {
+                json = PayloadScorer.error("Please check the format of your predictions. " + ex.getMessage());
+            } catch (RuntimeException ex) {
+                // one request which can not be scored must not stop the scorer
+                json = PayloadScorer.error("Please check the format of your predictions. " + ex);
+            }
+            byte[] answer = json.getBytes(StandardCharsets.UTF_8);
+            answers.writeInt(answer.length);
+            answers.write(answer);
+            answers.flush();
+            count++;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Counts the pairs of reference and predicted labels of one trait. The labels are given dense indexes in the
+ * order they are seen, by a {@link LabelIndex}, and the reference labels are also kept in the order of their
+ * first appearance, which is the order used for the class names by {@link PersonalityScorerF1} and {@link PersonalityScorerUA}.
+ * Both scorers can compute their measures from these counts, so the instances do not need to be kept.
+ * @author Firoj Alam
+ */
+public class ConfusionCounts {
+
+    private final LabelIndex labels = new LabelIndex();
+    private int[] refClasses = new int[4];
+    private boolean[] isRefClass = new boolean[4];
+    private int refClassCount;
+    private long[][] counts = new long[4][4];
+
+    /**
+     * Default constructor
+     */
+    public ConfusionCounts() {
+    }
+
+    /**
+     * Counts one instance.
+     * @param ref reference label
+     * @param pred predicted label
+     */
+    public void add(char ref, char pred) {
+        add(ref, pred, 1);
+    }
+
+    /**
+     * Counts the same pair of labels several times.
+     * @param ref reference label
+     * @param pred predicted label
+     * @param n number of instances
+     */
+    public void add(char ref, char pred, long n) {
+        int r = indexOf(ref);
+        int p = indexOf(pred);
+        if (!isRefClass[r]) {
+            isRefClass[r] = true;
+            refClasses[refClassCount++] = r;
+        }
+        counts[r][p] += n;
+    }
+
+    /**
+     * Adds the counts of another part of the input. The other part must come after this one, so that the classes
+     * are kept in the order of their first appearance.
+     * @param other counts of the other part
+     */
+    public void merge(ConfusionCounts other) {
+        for (int k = 0; k < other.refClassCount; k++) {
+            int r = other.refClasses[k];
+            for (int p = 0; p < other.labels.size(); p++) {
+                if (other.counts[r][p] != 0) {
+                    add(other.labels.label(r), other.labels.label(p), other.counts[r][p]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the counts in binary form: the labels in the order of their indexes, the classes in the order of
+     * their first appearance and then the pairs of labels which were counted, with their counts.
+     * @param out output
+     * @throws IOException if the counts can not be written
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeShort(labels.size());
+        for (int i = 0; i < labels.size(); i++) {
+            out.writeChar(labels.label(i));
+        }
+        out.writeShort(refClassCount);
+        for (int k = 0; k < refClassCount; k++) {
+            out.writeShort(refClasses[k]);
+        }
+        int pairs = 0;
+        for (int k = 0; k < refClassCount; k++) {
+            for (int p = 0; p < labels.size(); p++) {
+                if (counts[refClasses[k]][p] != 0) {
+                    pairs++;
+                }
+            }
+        }
+        out.writeInt(pairs);
+        for (int k = 0; k < refClassCount; k++) {
+            int r = refClasses[k];
+            for (int p = 0; p < labels.size(); p++) {
+                if (counts[r][p] != 0) {
+                    out.writeShort(r);
+                    out.writeShort(p);
+                    out.writeLong(counts[r][p]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads counts written by {@link #write(DataOutput)}. The labels get the same indexes and the classes
+     * the same order as in the written counts.
+     * @param in input
+     * @return the counts
+     * @throws IOException if the counts can not be read
+     */
+    public static ConfusionCounts read(DataInput in) throws IOException {
+        ConfusionCounts cc = new ConfusionCounts();
+        int labelCount = in.readUnsignedShort();
+        for (int i = 0; i < labelCount; i++) {
+            if (cc.indexOf(in.readChar()) != i) {
+                throw new IOException("Repeated label in the confusion counts.");
+            }
+        }
+        int refClassCount = in.readUnsignedShort();
+        for (int k = 0; k < refClassCount; k++) {
+            int r = in.readUnsignedShort();
+            if (r >= labelCount || cc.isRefClass[r]) {
+                throw new IOException("Wrong class in the confusion counts: " + r);
+            }
+            cc.isRefClass[r] = true;
+            cc.refClasses[cc.refClassCount++] = r;
+        }
+        int pairs = in.readInt();
+        for (int k = 0; k < pairs; k++) {
+            int r = in.readUnsignedShort();
+            int p = in.readUnsignedShort();
+            if (r >= labelCount || p >= labelCount || !cc.isRefClass[r]) {
+                throw new IOException("Wrong pair of labels in the confusion counts: " + r + ", " + p);
+            }
+            cc.counts[r][p] += in.readLong();
+        }
+        return cc;
+    }
+
+    /**
+     * Returns the dense index of a label, the label is added when it is seen for the first time.
+     */
+    private int indexOf(char label) {
+        int i = labels.intern(label);
+        if (i == counts.length) {
+            grow();
+        }
+        return i;
+    }
+
+    private void grow() {
+        int size = counts.length * 2;
+        refClasses = Arrays.copyOf(refClasses, size);
+        isRefClass = Arrays.copyOf(isRefClass, size);
+        long[][] grown = new long[size][size];
+        for (int i = 0; i < counts.length; i++) {
+            System.arraycopy(counts[i], 0, grown[i], 0, counts.length);
+        }
+        counts = grown;
+    }
+
+    /**
+     * @return the number of distinct labels seen, reference or predicted
+     */
+    public int labelCount() {
+        return labels.size();
+    }
+
+    /**
+     * @param i dense index of the label
+     * @return the label
+     */
+    public char label(int i) {
+        return labels.label(i);
+    }
+
+    /**
+     * @param ref dense index of the reference label
+     * @param pred dense index of the predicted label
+     * @return the number of instances with this pair of labels
+     */
+    public long count(int ref, int pred) {
+        return counts[ref][pred];
+    }
+
+    /**
+     * @return the number of distinct reference labels, i.e. the number of classes
+     */
+    public int refClassCount() {
+        return refClassCount;
+    }
+
+    /**
+     * @param k position of the class in the order of first appearance
+     * @return the dense index of the class label
+     */
+    public int refClass(int k) {
+        return refClasses[k];
+    }
+}
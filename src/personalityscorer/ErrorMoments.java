@@ -0,0 +1,180 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Accumulates the errors of the numeric predictions of one trait, so that the root-mean square error, the mean
+ * absolute error, the bias, R squared and the Pearson correlation can all be computed in a single pass without
+ * keeping the instances. The squared errors are summed exactly, so the moments of separate parts of the input can
+ * be merged and give the same result as a single pass.
+ * The other moments are exact sums as well, the squares and products of the values included, so the centered
+ * sums of squares of R squared and of the correlation are computed without cancellation from the raw sums. Unlike
+ * Welford's running means, which round at every update, exact sums do not depend on the order of the instances
+ * or on how the input was split before merging.
+ * @author Firoj Alam
+ */
+public class ErrorMoments {
+
+    private long n;
+    private ExactSum errorSum = new ExactSum();
+    private ExactSum absErrorSum = new ExactSum();
+    private ExactSum biasSum = new ExactSum();
+    private ExactSum refSum = new ExactSum();
+    private ExactSum predSum = new ExactSum();
+    private ExactSum refSqSum = new ExactSum();
+    private ExactSum predSqSum = new ExactSum();
+    private ExactSum crossSum = new ExactSum();
+
+    /**
+     * Default constructor
+     */
+    public ErrorMoments() {
+    }
+
+    /**
+     * Adds the error of one instance.
+     * @param ref reference value
+     * @param pred predicted value
+     */
+    public void add(double ref, double pred) {
+        double e = pred - ref;
+        errorSum.add(e * e);
+        absErrorSum.add(Math.abs(e));
+        biasSum.add(e);
+        refSum.add(ref);
+        predSum.add(pred);
+        refSqSum.addProduct(ref, ref);
+        predSqSum.addProduct(pred, pred);
+        crossSum.addProduct(ref, pred);
+        n++;
+    }
+
+    /**
+     * Adds the errors of another part of the input.
+     * @param other moments of the other part
+     */
+    public void merge(ErrorMoments other) {
+        n += other.n;
+        errorSum.add(other.errorSum);
+        absErrorSum.add(other.absErrorSum);
+        biasSum.add(other.biasSum);
+        refSum.add(other.refSum);
+        predSum.add(other.predSum);
+        refSqSum.add(other.refSqSum);
+        predSqSum.add(other.predSqSum);
+        crossSum.add(other.crossSum);
+    }
+
+    /**
+     * Writes the moments in binary form.
+     * @param out output
+     * @throws IOException if the moments can not be written
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(n);
+        errorSum.write(out);
+        absErrorSum.write(out);
+        biasSum.write(out);
+        refSum.write(out);
+        predSum.write(out);
+        refSqSum.write(out);
+        predSqSum.write(out);
+        crossSum.write(out);
+    }
+
+    /**
+     * Reads moments written by {@link #write(DataOutput)}.
+     * @param in input
+     * @return the moments
+     * @throws IOException if the moments can not be read
+     */
+    public static ErrorMoments read(DataInput in) throws IOException {
+        ErrorMoments moments = new ErrorMoments();
+        moments.n = in.readLong();
+        moments.errorSum = ExactSum.read(in);
+        moments.absErrorSum = ExactSum.read(in);
+        moments.biasSum = ExactSum.read(in);
+        moments.refSum = ExactSum.read(in);
+        moments.predSum = ExactSum.read(in);
+        moments.refSqSum = ExactSum.read(in);
+        moments.predSqSum = ExactSum.read(in);
+        moments.crossSum = ExactSum.read(in);
+        return moments;
+    }
+
+    /**
+     * @return the number of instances
+     */
+    public long count() {
+        return n;
+    }
+
+    /**
+     * @return the sum of squared errors
+     */
+    public double squaredErrorSum() {
+        return errorSum.value();
+    }
+
+    /**
+     * @return the root-mean square error
+     */
+    public double rmse() {
+        return Math.sqrt(errorSum.value() / n);
+    }
+
+    /**
+     * @return the mean absolute error
+     */
+    public double mae() {
+        return absErrorSum.value() / n;
+    }
+
+    /**
+     * @return the mean of the predicted minus the reference values
+     */
+    public double bias() {
+        return biasSum.value() / n;
+    }
+
+    /**
+     * @return the coefficient of determination, 1 - SSE / SST, NaN if all reference values are equal
+     */
+    public double rSquared() {
+        double sst = centered(refSqSum, refSum, refSum) / n;
+        return sst == 0.0 ? Double.NaN : 1.0 - errorSum.value() / sst;
+    }
+
+    /**
+     * @return the Pearson correlation of the reference and predicted values, NaN if either is constant
+     */
+    public double pearson() {
+        double sxy = centered(crossSum, refSum, predSum);
+        double sxx = centered(refSqSum, refSum, refSum);
+        double syy = centered(predSqSum, predSum, predSum);
+        if (sxx == 0.0 || syy == 0.0) {
+            return Double.NaN;
+        }
+        return sxy / Math.sqrt(sxx) / Math.sqrt(syy);
+    }
+
+    /**
+     * Computes n * sum(xy) - sum(x) * sum(y), i.e. n times the centered sum of products, rounded only once.
+     */
+    private double centered(ExactSum productSum, ExactSum xSum, ExactSum ySum) {
+        ExactSum s = new ExactSum();
+        s.addProduct((double) n, productSum);
+        s.addProduct(xSum.negated(), ySum);
+        return s.value();
+    }
+}
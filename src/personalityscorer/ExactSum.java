@@ -0,0 +1,192 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sum of doubles without rounding errors. The sum is kept as a short list of non-overlapping partial sums
+ * (Shewchuk's algorithm, as in Python's math.fsum) and is only rounded when its value is read, so the value does
+ * not depend on the order in which the numbers were added. Sums over parts of the input can therefore be merged
+ * in any order and still give the same result, bit for bit, as a sequential sum.
+ * @author Firoj Alam
+ */
+public class ExactSum {
+
+    // 2^27 + 1, splits a double into two halves whose products are exact
+    private static final double SPLITTER = 134217729.0;
+
+    private double[] partials = new double[4];
+    private int count;
+
+    /**
+     * Default constructor
+     */
+    public ExactSum() {
+    }
+
+    /**
+     * Adds a number to the sum.
+     * @param x the number
+     */
+    public void add(double x) {
+        int i = 0;
+        for (int j = 0; j < count; j++) {
+            double y = partials[j];
+            if (Math.abs(x) < Math.abs(y)) {
+                double t = x;
+                x = y;
+                y = t;
+            }
+            double hi = x + y;
+            double lo = y - (hi - x);
+            if (lo != 0.0) {
+                partials[i++] = lo;
+            }
+            x = hi;
+        }
+        if (i == partials.length) {
+            partials = Arrays.copyOf(partials, i * 2);
+        }
+        partials[i] = x;
+        count = i + 1;
+    }
+
+    /**
+     * Adds another sum to this sum.
+     * @param other the other sum
+     */
+    public void add(ExactSum other) {
+        for (int j = 0; j < other.count; j++) {
+            add(other.partials[j]);
+        }
+    }
+
+    /**
+     * Adds the product of two numbers without rounding it: the rounded product and its rounding error, found by
+     * Dekker's algorithm, are both added.
+     * @param x first factor
+     * @param y second factor
+     */
+    public void addProduct(double x, double y) {
+        double p = x * y;
+        add(p);
+        double t = SPLITTER * x;
+        double xh = t - (t - x);
+        double xl = x - xh;
+        t = SPLITTER * y;
+        double yh = t - (t - y);
+        double yl = y - yh;
+        double err = ((xh * yh - p) + xh * yl + xl * yh) + xl * yl;
+        if (err != 0.0) {
+            add(err);
+        }
+    }
+
+    /**
+     * Adds the product of a number and a sum without rounding it.
+     * @param x the number
+     * @param sum the sum
+     */
+    public void addProduct(double x, ExactSum sum) {
+        for (int j = 0; j < sum.count; j++) {
+            addProduct(x, sum.partials[j]);
+        }
+    }
+
+    /**
+     * Adds the product of two sums without rounding it.
+     * @param a first sum
+     * @param b second sum
+     */
+    public void addProduct(ExactSum a, ExactSum b) {
+        for (int i = 0; i < a.count; i++) {
+            for (int j = 0; j < b.count; j++) {
+                addProduct(a.partials[i], b.partials[j]);
+            }
+        }
+    }
+
+    /**
+     * @return a new sum of the opposite value
+     */
+    public ExactSum negated() {
+        ExactSum neg = new ExactSum();
+        neg.partials = new double[Math.max(4, count)];
+        for (int j = 0; j < count; j++) {
+            neg.partials[j] = -partials[j];
+        }
+        neg.count = count;
+        return neg;
+    }
+
+    /**
+     * Writes the partial sums, so the sum can be read back and merged without any rounding.
+     * @param out output
+     * @throws IOException if the sum can not be written
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(count);
+        for (int j = 0; j < count; j++) {
+            out.writeDouble(partials[j]);
+        }
+    }
+
+    /**
+     * Reads a sum written by {@link #write(DataOutput)}.
+     * @param in input
+     * @return the sum
+     * @throws IOException if the sum can not be read
+     */
+    public static ExactSum read(DataInput in) throws IOException {
+        ExactSum sum = new ExactSum();
+        int n = in.readInt();
+        if (n < 0) {
+            throw new IOException("Wrong number of partial sums: " + n);
+        }
+        for (int j = 0; j < n; j++) {
+            sum.add(in.readDouble());
+        }
+        return sum;
+    }
+
+    /**
+     * @return the sum, correctly rounded
+     */
+    public double value() {
+        if (count == 0) {
+            return 0.0;
+        }
+        int n = count - 1;
+        double hi = partials[n];
+        double lo = 0.0;
+        while (n > 0) {
+            double x = hi;
+            double y = partials[--n];
+            hi = x + y;
+            double yr = hi - x;
+            lo = y - yr;
+            if (lo != 0.0) {
+                break;
+            }
+        }
+        if (n > 0 && ((lo < 0 && partials[n - 1] < 0) || (lo > 0 && partials[n - 1] > 0))) {
+            double y = lo * 2;
+            double x = hi + y;
+            double yr = x - hi;
+            if (y == yr) {
+                hi = x;
+            }
+        }
+        return hi;
+    }
+}
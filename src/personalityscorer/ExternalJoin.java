@@ -0,0 +1,496 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Joins a reference file and a prediction file by instance id without keeping either file in memory, for files
+ * whose ids do not fit in the {@link IdTable} of {@link IdJoin}. The files have the same format as for
+ * {@link IdJoin}. Each file is cut into runs which fit in the memory budget; a run is sorted by id and written to a
+ * temporary file, and the runs are then merged, at most {@link #MAX_FAN_IN} at a time. The two sorted streams are
+ * merged by id and each joined instance is passed to an accumulator, so the scores are the same as with
+ * {@link IdJoin}, only the instances come in the order of their ids. Ids without a match and repeated ids are
+ * reported as by {@link IdJoin}; of a repeated id the first instance of the file is used.
+ * @author Firoj Alam
+ */
+public class ExternalJoin {
+
+    public static final int MAX_FAN_IN = 64;
+    // bytes of the index of a record: its offset, the lengths of its id and labels and its sequence number
+    private static final int INDEX_BYTES = 20;
+    // bytes of a record besides its id and labels: its index and its boxed position while the run is sorted
+    private static final int RECORD_OVERHEAD = 48;
+    private static final int MIN_BUFFER = 8192;
+    private static final int MAX_DATA = Integer.MAX_VALUE - 8;
+
+    private final long budget;
+    private final boolean numeric;
+    private int traits = -1;
+    private final IdJoin.Problem missing = new IdJoin.Problem("reference ids have no prediction");
+    private final IdJoin.Problem unknown = new IdJoin.Problem("predicted ids are not in the reference file");
+    private final IdJoin.Problem goldRepeated = new IdJoin.Problem("reference ids are repeated, the first instance is used");
+    private final IdJoin.Problem predRepeated = new IdJoin.Problem("predicted ids are repeated, the first prediction is used");
+
+    /**
+     * @param budgetMB memory used for sorting, in megabytes
+     * @param numeric whether the files hold numeric values
+     */
+    public ExternalJoin(int budgetMB, boolean numeric) {
+        this.budget = Math.max(1, budgetMB) * (1L << 20);
+        this.numeric = numeric;
+    }
+
+    /**
+     * Joins the two files and passes the joined instances to the accumulator.
+     * @param goldFile file of ids and reference labels
+     * @param predFile file of ids and predicted labels
+     * @param acc accumulator of the joined instances
+     * @throws IOException if a file can not be read or a run can not be written
+     */
+    public void join(String goldFile, String predFile, Accumulator<?> acc) throws IOException {
+        ArrayList<File> goldRuns = new ArrayList<File>();
+        ArrayList<File> predRuns = new ArrayList<File>();
+        try {
+            sortRuns(goldFile, true, goldRuns);
+            sortRuns(predFile, false, predRuns);
+            mergeRuns(goldRuns);
+            mergeRuns(predRuns);
+            int streams = goldRuns.size() + predRuns.size();
+            RunMerger gold = new RunMerger(goldRuns, bufferSize(streams));
+            RunMerger pred = new RunMerger(predRuns, bufferSize(streams));
+            try {
+                mergeJoin(gold, pred, acc);
+            } finally {
+                gold.close();
+                pred.close();
+            }
+        } finally {
+            delete(goldRuns);
+            delete(predRuns);
+        }
+        IdJoin.Problem[] problems = {missing, unknown, goldRepeated, predRepeated};
+        for (int i = 0; i < problems.length; i++) {
+            problems[i].print();
+        }
+    }
+
+    private int bufferSize(int streams) {
+        return (int) Math.max(MIN_BUFFER, Math.min(1 << 20, budget / 2 / streams));
+    }
+
+    /**
+     * Reads a file into sorted runs of at most the memory budget.
+     */
+    private void sortRuns(String fileName, final boolean gold, final ArrayList<File> runs) throws IOException {
+        final Run run = new Run(budget);
+        final IOException[] failure = new IOException[1];
+        new InstanceReader(InstanceReader.ID_COLUMNS).read(fileName, new InstanceReader.RowHandler() {
+            private long seq;
+            private final StringBuilder value = new StringBuilder();
+            private double[] values;
+
+            @Override
+            public void row(ByteBuffer buf, int[] start, int[] end, int line) {
+                int s = start[InstanceReader.REF_LABELS];
+                int e = end[InstanceReader.REF_LABELS];
+                int length = numeric ? InstanceReader.countValues(buf, s, e) : e - s;
+                if (gold && traits < 0) {
+                    traits = length;
+                }
+                if (length != traits || !parse(buf, s, e)) {
+                    System.err.println("\nPlease check instance ids and labels in your " + (gold ? "reference" : "prediction")
+                            + " file at line " + line);
+                    return;
+                }
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    if (!run.add(buf, start[InstanceReader.REF_ID], end[InstanceReader.REF_ID], s, e, seq++)) {
+                        runs.add(run.spill());
+                        run.add(buf, start[InstanceReader.REF_ID], end[InstanceReader.REF_ID], s, e, seq - 1);
+                    }
+                } catch (IOException ex) {
+                    failure[0] = ex;
+                }
+            }
+
+            /**
+             * Checks that the values of a numeric row are numbers, so that a row is rejected with its line as
+             * {@link IdJoin} rejects it; labels are not checked.
+             */
+            private boolean parse(ByteBuffer buf, int s, int e) {
+                if (!numeric) {
+                    return true;
+                }
+                if (values == null) {
+                    values = new double[traits];
+                }
+                try {
+                    InstanceReader.parseValues(buf, s, e, values, value);
+                    return true;
+                } catch (NumberFormatException ex) {
+                    return false;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        if (run.size() > 0 || runs.isEmpty()) {
+            runs.add(run.spill());
+        }
+    }
+
+    /**
+     * Merges the runs until at most {@link #MAX_FAN_IN} are left.
+     */
+    private void mergeRuns(ArrayList<File> runs) throws IOException {
+        while (runs.size() > MAX_FAN_IN) {
+            ArrayList<File> group = new ArrayList<File>(runs.subList(0, MAX_FAN_IN));
+            File merged = File.createTempFile("personalityscorer", ".run");
+            merged.deleteOnExit();
+            RunMerger merger = new RunMerger(group, bufferSize(MAX_FAN_IN + 1));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged), bufferSize(2)));
+            try {
+                for (Record r = merger.next(); r != null; r = merger.next()) {
+                    r.write(out);
+                }
+            } finally {
+                merger.close();
+                out.close();
+            }
+            delete(group);
+            runs.subList(0, MAX_FAN_IN).clear();
+            runs.add(merged);
+        }
+    }
+
+    /**
+     * Merges the sorted reference and prediction records by id.
+     */
+    private void mergeJoin(RunMerger gold, RunMerger pred, Accumulator<?> acc) throws IOException {
+        int[] start = new int[InstanceReader.COLUMNS];
+        int[] end = new int[InstanceReader.COLUMNS];
+        byte[] line = new byte[256];
+        int lines = 0;
+        Record g = gold.next();
+        Record p = pred.next();
+        while (g != null || p != null) {
+            int cmp = g == null ? 1 : p == null ? -1 : g.compareId(p);
+            Record ref = null, hyp = null;
+            if (cmp <= 0) {
+                ref = g;
+                g = skipRepeated(gold, g, goldRepeated);
+            }
+            if (cmp >= 0) {
+                hyp = p;
+                p = skipRepeated(pred, p, predRepeated);
+            }
+            if (hyp == null) {
+                missing.add(ref.idText());
+            } else if (ref == null) {
+                unknown.add(hyp.idText());
+            } else {
+                int length = ref.id.length + ref.labels.length + hyp.labels.length;
+                if (line.length < length) {
+                    line = Arrays.copyOf(line, Math.max(length, line.length * 2));
+                }
+                System.arraycopy(ref.id, 0, line, 0, ref.id.length);
+                System.arraycopy(ref.labels, 0, line, ref.id.length, ref.labels.length);
+                System.arraycopy(hyp.labels, 0, line, ref.id.length + ref.labels.length, hyp.labels.length);
+                start[InstanceReader.REF_ID] = start[InstanceReader.PRED_ID] = 0;
+                end[InstanceReader.REF_ID] = end[InstanceReader.PRED_ID] = ref.id.length;
+                start[InstanceReader.REF_LABELS] = ref.id.length;
+                end[InstanceReader.REF_LABELS] = start[InstanceReader.PRED_LABELS] = ref.id.length + ref.labels.length;
+                end[InstanceReader.PRED_LABELS] = length;
+                acc.row(ByteBuffer.wrap(line), start, end, ++lines);
+            }
+        }
+    }
+
+    /**
+     * @return the first record of the next id, the records repeating the id of first are counted as repeated
+     */
+    private static Record skipRepeated(RunMerger merger, Record first, IdJoin.Problem repeated) throws IOException {
+        Record r = merger.next();
+        while (r != null && r.compareId(first) == 0) {
+            repeated.add(r.idText());
+            r = merger.next();
+        }
+        return r;
+    }
+
+    private static void delete(ArrayList<File> runs) {
+        for (int i = 0; i < runs.size(); i++) {
+            runs.get(i).delete();
+        }
+    }
+
+    /**
+     * An instance of a run: its id, its labels or values, and its position in the file.
+     */
+    private static class Record {
+
+        private final byte[] id;
+        private final byte[] labels;
+        private final long seq;
+
+        Record(byte[] id, byte[] labels, long seq) {
+            this.id = id;
+            this.labels = labels;
+            this.seq = seq;
+        }
+
+        static Record read(DataInputStream in) throws IOException {
+            long seq;
+            try {
+                seq = in.readLong();
+            } catch (EOFException ex) {
+                return null;
+            }
+            byte[] id = new byte[in.readInt()];
+            in.readFully(id);
+            byte[] labels = new byte[in.readInt()];
+            in.readFully(labels);
+            return new Record(id, labels, seq);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(seq);
+            out.writeInt(id.length);
+            out.write(id);
+            out.writeInt(labels.length);
+            out.write(labels);
+        }
+
+        int compareId(Record other) {
+            return compare(id, 0, id.length, other.id, 0, other.id.length);
+        }
+
+        int compareTo(Record other) {
+            int cmp = compareId(other);
+            return cmp != 0 ? cmp : seq < other.seq ? -1 : seq > other.seq ? 1 : 0;
+        }
+
+        String idText() {
+            return new String(id, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Compares two byte ranges as unsigned bytes.
+     */
+    static int compare(byte[] a, int as, int ae, byte[] b, int bs, int be) {
+        int n = Math.min(ae - as, be - bs);
+        for (int i = 0; i < n; i++) {
+            int x = a[as + i] & 0xFF;
+            int y = b[bs + i] & 0xFF;
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return (ae - as) - (be - bs);
+    }
+
+    /**
+     * The instances of a run kept in memory until the run is sorted and written: the ids and labels are copied
+     * one after the other in a single array. The arrays only grow while they fit in the budget, counting the copy
+     * made while an array grows, so a run which does not fit is spilled instead.
+     */
+    private static class Run {
+
+        private final long budget;
+        private byte[] data = new byte[MIN_BUFFER];
+        private int used;
+        private int[] offsets = new int[1024];
+        private int[] idLengths = new int[1024];
+        private int[] labelLengths = new int[1024];
+        private long[] seqs = new long[1024];
+        private int size;
+
+        Run(long budget) {
+            this.budget = budget;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return false if the instance does not fit in the budget, unless the run is empty
+         */
+        boolean add(ByteBuffer buf, int idStart, int idEnd, int s, int e, long seq) {
+            int length = idEnd - idStart + e - s;
+            long needed = (long) used + length;
+            if (size > 0 && (needed > MAX_DATA || size == MAX_DATA)) {
+                return false;
+            }
+            if (needed > data.length) {
+                // the old and the grown array are both held while the data is copied
+                long room = budget - data.length - (long) offsets.length * RECORD_OVERHEAD;
+                long grown = Math.min(MAX_DATA, Math.min((long) data.length * 2, room));
+                if (grown < needed) {
+                    if (size > 0) {
+                        return false;
+                    }
+                    grown = needed;
+                }
+                data = Arrays.copyOf(data, (int) grown);
+            }
+            if (size == offsets.length) {
+                // the grown records, and the old index while it is copied
+                long room = (budget - data.length - (long) size * INDEX_BYTES) / RECORD_OVERHEAD;
+                int grown = (int) Math.min(MAX_DATA, Math.min((long) size * 2, room));
+                if (grown <= size) {
+                    return false;
+                }
+                offsets = Arrays.copyOf(offsets, grown);
+                idLengths = Arrays.copyOf(idLengths, grown);
+                labelLengths = Arrays.copyOf(labelLengths, grown);
+                seqs = Arrays.copyOf(seqs, grown);
+            }
+            offsets[size] = used;
+            idLengths[size] = idEnd - idStart;
+            labelLengths[size] = e - s;
+            seqs[size] = seq;
+            for (int i = idStart; i < idEnd; i++) {
+                data[used++] = buf.get(i);
+            }
+            for (int i = s; i < e; i++) {
+                data[used++] = buf.get(i);
+            }
+            size++;
+            return true;
+        }
+
+        /**
+         * Sorts the instances by id, writes them to a temporary file and empties the run.
+         * @return the file of the run
+         */
+        File spill() throws IOException {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer x, Integer y) {
+                    int cmp = ExternalJoin.compare(data, offsets[x], offsets[x] + idLengths[x],
+                            data, offsets[y], offsets[y] + idLengths[y]);
+                    return cmp != 0 ? cmp : seqs[x] < seqs[y] ? -1 : seqs[x] > seqs[y] ? 1 : 0;
+                }
+            });
+            File file = File.createTempFile("personalityscorer", ".run");
+            file.deleteOnExit();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            try {
+                for (int k = 0; k < size; k++) {
+                    int i = order[k];
+                    out.writeLong(seqs[i]);
+                    out.writeInt(idLengths[i]);
+                    out.write(data, offsets[i], idLengths[i]);
+                    out.writeInt(labelLengths[i]);
+                    out.write(data, offsets[i] + idLengths[i], labelLengths[i]);
+                }
+            } finally {
+                out.close();
+            }
+            used = 0;
+            size = 0;
+            return file;
+        }
+    }
+
+    /**
+     * Merges sorted runs into a single sorted stream of records.
+     */
+    private static class RunMerger {
+
+        private final ArrayList<DataInputStream> inputs = new ArrayList<DataInputStream>();
+        private final PriorityQueue<Head> heads;
+
+        RunMerger(ArrayList<File> runs, int bufferSize) throws IOException {
+            heads = new PriorityQueue<Head>(Math.max(1, runs.size()), new Comparator<Head>() {
+                @Override
+                public int compare(Head x, Head y) {
+                    return x.record.compareTo(y.record);
+                }
+            });
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(runs.get(i)), bufferSize));
+                    inputs.add(in);
+                    Record r = Record.read(in);
+                    if (r != null) {
+                        heads.add(new Head(r, in));
+                    }
+                }
+            } catch (IOException ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        /**
+         * @return the next record in order of id, null at the end of all the runs
+         */
+        Record next() throws IOException {
+            Head head = heads.poll();
+            if (head == null) {
+                return null;
+            }
+            Record r = head.record;
+            head.record = Record.read(head.in);
+            if (head.record != null) {
+                heads.add(head);
+            }
+            return r;
+        }
+
+        void close() {
+            for (int i = 0; i < inputs.size(); i++) {
+                try {
+                    inputs.get(i).close();
+                } catch (IOException ex) {
+                    // the run is deleted anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * The current record of a run being merged.
+     */
+    private static class Head {
+
+        private Record record;
+        private final DataInputStream in;
+
+        Head(Record record, DataInputStream in) {
+            this.record = record;
+            this.in = in;
+        }
+    }
+}
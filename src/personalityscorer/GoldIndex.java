@@ -0,0 +1,363 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+/**
+ * A compiled reference file of the id join, kept next to the reference file as FILE.idx so that later runs against
+ * the same reference file map it instead of parsing it again. The index holds a header with the hash of the
+ * reference file, the packed ids and the labels or values of each row, and the slots of the {@link IdTable} of the
+ * ids, so the ids are looked up in the mapped file without building a table. The index is rebuilt when the hash of
+ * the reference file changes. Reference files with ids other than 32 hex digits are not indexed.
+ * @author Firoj Alam
+ */
+public class GoldIndex {
+
+    public static final String SUFFIX = ".idx";
+    private static final int MAGIC = 0x50544749;
+    private static final int VERSION = 1;
+    private static final int EMPTY = -1;
+    private static final int WINDOW_SIZE = 64 << 20;
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final boolean numeric;
+    private final int traits;
+    private final int rows;
+    private final int mask;
+    private final MappedByteBuffer hi;
+    private final MappedByteBuffer lo;
+    private final MappedByteBuffer data;
+    private final MappedByteBuffer slots;
+    private final int repeated;
+    private final ArrayList<String> repeatedIds = new ArrayList<String>();
+    private final ArrayList<Integer> badLines = new ArrayList<Integer>();
+    private final long[] key = new long[2];
+
+    private GoldIndex(boolean numeric, int traits, int rows, int capacity, int repeated, FileChannel channel,
+            long offset) throws IOException {
+        this.numeric = numeric;
+        this.traits = traits;
+        this.rows = rows;
+        this.mask = capacity - 1;
+        this.repeated = repeated;
+        long dataLength = (long) rows * traits * (numeric ? 8 : 1);
+        hi = channel.map(FileChannel.MapMode.READ_ONLY, offset, rows * 8L);
+        lo = channel.map(FileChannel.MapMode.READ_ONLY, offset + rows * 8L, rows * 8L);
+        data = channel.map(FileChannel.MapMode.READ_ONLY, offset + rows * 16L, dataLength);
+        slots = channel.map(FileChannel.MapMode.READ_ONLY, align(offset + rows * 16L + dataLength), capacity * 4L);
+    }
+
+    /**
+     * @return the file of the index of a reference file
+     */
+    public static String indexFile(String goldFile) {
+        return goldFile + SUFFIX;
+    }
+
+    /**
+     * Hashes the bytes of a file, 8 bytes at a time.
+     * @param fileName the file
+     * @return a 64-bit hash of the length and the content of the file
+     * @throws IOException if the file can not be read
+     */
+    public static long hash(String fileName) throws IOException {
+        FileInputStream in = new FileInputStream(fileName);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            long h = size * PRIME1;
+            for (long position = 0; position < size; position += WINDOW_SIZE) {
+                long length = Math.min(WINDOW_SIZE, size - position);
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                while (buf.remaining() >= 8) {
+                    h = Long.rotateLeft(h ^ buf.getLong() * PRIME2, 31) * PRIME1;
+                }
+                while (buf.hasRemaining()) {
+                    h = Long.rotateLeft(h ^ (buf.get() & 0xFF) * PRIME2, 31) * PRIME1;
+                }
+            }
+            h ^= h >>> 33;
+            h *= PRIME2;
+            h ^= h >>> 29;
+            return h;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Maps the index of a reference file.
+     * @param goldFile the reference file
+     * @param hash the hash of the reference file
+     * @param numeric whether the reference file holds numeric values
+     * @return the index, null if there is no index of the reference file with this hash and kind of values
+     * @throws IOException if the index can not be read
+     */
+    public static GoldIndex open(String goldFile, long hash, boolean numeric) throws IOException {
+        File file = new File(indexFile(goldFile));
+        if (!file.isFile()) {
+            return null;
+        }
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            if (channel.size() < 12) {
+                return null;
+            }
+            ByteBuffer start = channel.map(FileChannel.MapMode.READ_ONLY, 0, 12);
+            if (start.getInt() != MAGIC || start.getInt() != VERSION) {
+                return null;
+            }
+            int headerLength = start.getInt();
+            if (headerLength < 0 || headerLength > channel.size() - 12) {
+                return null;
+            }
+            byte[] header = new byte[headerLength];
+            channel.map(FileChannel.MapMode.READ_ONLY, 12, header.length).get(header);
+            DataInputStream h = new DataInputStream(new ByteArrayInputStream(header));
+            if (h.readLong() != hash || h.readBoolean() != numeric) {
+                return null;
+            }
+            int traits = h.readInt();
+            int rows = h.readInt();
+            int capacity = h.readInt();
+            // an index cut short or written over by another run is rebuilt
+            if (traits < 0 || rows < 0 || capacity <= 0 || (capacity & (capacity - 1)) != 0
+                    || channel.size() != length(12 + header.length, numeric, traits, rows, capacity)) {
+                return null;
+            }
+            GoldIndex index = new GoldIndex(numeric, traits, rows, capacity, h.readInt(), channel,
+                    align(12 + header.length));
+            for (int i = h.readInt(); i > 0; i--) {
+                index.repeatedIds.add(h.readUTF());
+            }
+            for (int i = h.readInt(); i > 0; i--) {
+                index.badLines.add(h.readInt());
+            }
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the index of a parsed reference file.
+     * @param goldFile the reference file
+     * @param hash the hash of the reference file
+     * @param numeric whether the reference file holds numeric values
+     * @param traits the number of traits
+     * @param rows the number of rows, i.e., of distinct ids
+     * @param ids the ids of the rows
+     * @param labels the labels of the rows, row by row, when not numeric
+     * @param values the values of the rows, row by row, when numeric
+     * @param repeatedIds the number of repeated ids
+     * @param examples a few repeated ids
+     * @param badLines the lines with wrong labels
+     * @return false if the ids can not be indexed, or the index would have sections of more than 2 GB
+     * @throws IOException if the index can not be written
+     */
+    public static boolean write(String goldFile, long hash, boolean numeric, int traits, int rows, IdTable ids,
+            byte[] labels, double[] values, int repeatedIds, ArrayList<String> examples, ArrayList<Integer> badLines)
+            throws IOException {
+        long[] hiByRow = new long[rows];
+        long[] loByRow = new long[rows];
+        int[] table = ids.slots();
+        if (traits < 0 || rows * 8L > Integer.MAX_VALUE || (long) rows * traits * 8 > Integer.MAX_VALUE
+                || table.length * 4L > Integer.MAX_VALUE || !ids.packedIds(hiByRow, loByRow)) {
+            return false;
+        }
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeLong(hash);
+        h.writeBoolean(numeric);
+        h.writeInt(traits);
+        h.writeInt(rows);
+        h.writeInt(table.length);
+        h.writeInt(repeatedIds);
+        h.writeInt(examples.size());
+        for (int i = 0; i < examples.size(); i++) {
+            h.writeUTF(examples.get(i));
+        }
+        h.writeInt(badLines.size());
+        for (int i = 0; i < badLines.size(); i++) {
+            h.writeInt(badLines.get(i));
+        }
+        h.close();
+        File file = new File(indexFile(goldFile)).getAbsoluteFile();
+        // each run writes its own temporary file, so runs against the same reference file do not mix their writes
+        File partial = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        boolean written = false;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partial), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(header.size());
+            header.writeTo(out);
+            pad(out);
+            for (int row = 0; row < rows; row++) {
+                out.writeLong(hiByRow[row]);
+            }
+            for (int row = 0; row < rows; row++) {
+                out.writeLong(loByRow[row]);
+            }
+            if (numeric) {
+                for (int i = 0; i < rows * traits; i++) {
+                    out.writeDouble(values[i]);
+                }
+            } else {
+                out.write(labels, 0, rows * traits);
+            }
+            pad(out);
+            for (int i = 0; i < table.length; i++) {
+                out.writeInt(table[i]);
+            }
+            out.close();
+            try {
+                Files.move(partial.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            written = true;
+        } finally {
+            out.close();
+            if (!written) {
+                partial.delete();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the length of an index file with a header of the given length, up to the end of its sections
+     */
+    private static long length(long headerEnd, boolean numeric, int traits, int rows, int capacity) {
+        long dataLength = (long) rows * traits * (numeric ? 8 : 1);
+        return align(align(headerEnd) + rows * 16L + dataLength) + capacity * 4L;
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private static void pad(DataOutputStream out) throws IOException {
+        while ((out.size() & 7) != 0) {
+            out.writeByte(0);
+        }
+    }
+
+    /**
+     * @return the row of the id, -1 if the id is not in the index
+     */
+    public int get(ByteBuffer buf, int s, int e) {
+        return get(buf, s, e, key);
+    }
+
+    /**
+     * Looks up an id with a key of the caller, so that threads can look up ids in the same index.
+     * @param key receives the packed id
+     * @return the row of the id, -1 if the id is not in the index
+     */
+    public int get(ByteBuffer buf, int s, int e, long[] key) {
+        if (!IdTable.pack(buf, s, e, key)) {
+            return EMPTY;
+        }
+        long h = key[0], l = key[1];
+        int i = IdTable.mix(h, l) & mask;
+        int row;
+        while ((row = slots.getInt(i * 4)) != EMPTY) {
+            if (hi.getLong(row * 8) == h && lo.getLong(row * 8) == l) {
+                return row;
+            }
+            i = (i + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * @return the id of a row
+     */
+    public String id(int row) {
+        return IdTable.hex(hi.getLong(row * 8), lo.getLong(row * 8));
+    }
+
+    /**
+     * @return the label of a trait of a row
+     */
+    public byte label(int row, int trait) {
+        return data.get(row * traits + trait);
+    }
+
+    /**
+     * @return the value of a trait of a row
+     */
+    public double value(int row, int trait) {
+        return data.getDouble((row * traits + trait) * 8);
+    }
+
+    /**
+     * @return whether the index holds numeric values
+     */
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    /**
+     * @return the number of traits
+     */
+    public int traits() {
+        return traits;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of repeated ids of the reference file
+     */
+    public int getRepeated() {
+        return repeated;
+    }
+
+    /**
+     * @return a few repeated ids of the reference file
+     */
+    public ArrayList<String> getRepeatedIds() {
+        return repeatedIds;
+    }
+
+    /**
+     * @return the lines of the reference file with wrong labels
+     */
+    public ArrayList<Integer> getBadLines() {
+        return badLines;
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Joins a reference file and a prediction file by instance id, for predictions which are not on the same line as
+ * their reference labels. Both files have the id in the first column and the labels, or the '#' separated values,
+ * in the second one; other columns are ignored. The reference file is loaded into an {@link IdTable}, the
+ * predictions are then looked up by id and the joined instances are returned in the order of the reference file.
+ * Reference ids without prediction, predictions of unknown ids and repeated ids are reported, only the first
+ * instance of a repeated id is used.
+ * @author Firoj Alam
+ */
+public class IdJoin {
+
+    private static final int EXAMPLES = 5;
+
+    private final boolean numeric;
+    private final IdTable ids;
+    private int traits = -1;
+    private int goldRows;
+    private byte[] goldLabels = new byte[0];
+    private byte[] predLabels = new byte[0];
+    private double[] goldValues = new double[0];
+    private double[] predValues = new double[0];
+    private boolean[] matched = new boolean[0];
+    private double[] parsed;
+    private GoldIndex index;
+    private final ArrayList<Integer> badGoldLines = new ArrayList<Integer>();
+    private final long[] key = new long[2];
+    private final StringBuilder messages = new StringBuilder();
+    private final Problem missing = new Problem("reference ids have no prediction");
+    private final Problem unknown = new Problem("predicted ids are not in the reference file");
+    private final Problem goldRepeated = new Problem("reference ids are repeated, the first instance is used");
+    private final Problem predRepeated = new Problem("predicted ids are repeated, the first prediction is used");
+
+    /**
+     * @param numeric whether the files hold numeric values
+     */
+    public IdJoin(boolean numeric) {
+        this.numeric = numeric;
+        this.ids = new IdTable();
+    }
+
+    /**
+     * Starts a join of other predictions against the reference file already read by a join. The reference ids and
+     * labels are shared and no longer changed, so joins against the same reference file can read their
+     * predictions concurrently. The problems of the reference file are reported by
+     * {@link #reportGold()} of the join which read it.
+     * @param gold join which has read the reference file
+     */
+    public IdJoin(IdJoin gold) {
+        this.numeric = gold.numeric;
+        this.ids = gold.ids;
+        this.traits = gold.traits;
+        this.goldRows = gold.goldRows;
+        this.goldLabels = gold.goldLabels;
+        this.goldValues = gold.goldValues;
+        this.index = gold.index;
+        int size = goldRows * Math.max(traits, 0);
+        matched = new boolean[goldRows];
+        if (numeric) {
+            predValues = new double[size];
+        } else {
+            predLabels = new byte[size];
+        }
+    }
+
+    /**
+     * Joins the two files.
+     * @param goldFile file of ids and reference labels
+     * @param predFile file of ids and predicted labels
+     * @param numeric whether the files hold numeric values
+     * @return the joined instances, in the order of the reference file
+     * @throws IOException if a file can not be read
+     */
+    public static InstanceColumns join(String goldFile, String predFile, boolean numeric) throws IOException {
+        return join(goldFile, predFile, numeric, false);
+    }
+
+    /**
+     * Joins the two files, with the reference labels of the {@link GoldIndex} of the reference file if asked. The
+     * index is written, or rewritten, when there is no index of the current content of the reference file.
+     * @param goldFile file of ids and reference labels
+     * @param predFile file of ids and predicted labels
+     * @param numeric whether the files hold numeric values
+     * @param indexed whether the index of the reference file is used
+     * @return the joined instances, in the order of the reference file
+     * @throws IOException if a file can not be read
+     */
+    public static InstanceColumns join(String goldFile, String predFile, boolean numeric, boolean indexed)
+            throws IOException {
+        IdJoin join = gold(goldFile, numeric, indexed);
+        join.readPredictions(predFile);
+        join.report();
+        return join.columns();
+    }
+
+    /**
+     * Reads the reference file, or its {@link GoldIndex} if asked, as {@link #join(String, String, boolean, boolean)}
+     * does, for joins of several prediction files.
+     * @param goldFile file of ids and reference labels
+     * @param numeric whether the file holds numeric values
+     * @param indexed whether the index of the reference file is used
+     * @return a join which has read the reference file
+     * @throws IOException if the file can not be read
+     */
+    public static IdJoin gold(String goldFile, boolean numeric, boolean indexed) throws IOException {
+        IdJoin join = new IdJoin(numeric);
+        if (indexed && !InstanceReader.isStream(goldFile)) {
+            long hash = GoldIndex.hash(goldFile);
+            GoldIndex index = GoldIndex.open(goldFile, hash, numeric);
+            if (index != null) {
+                join.useIndex(index);
+            } else {
+                join.readGold(goldFile);
+                join.writeIndex(goldFile, hash);
+            }
+        } else {
+            join.readGold(goldFile);
+        }
+        return join;
+    }
+
+    /**
+     * Loads the reference file into the id table.
+     * @param goldFile file of ids and reference labels
+     * @throws IOException if the file can not be read
+     */
+    public void readGold(String goldFile) throws IOException {
+        final StringBuilder value = new StringBuilder();
+        new InstanceReader(InstanceReader.ID_COLUMNS).read(goldFile, new InstanceReader.RowHandler() {
+            @Override
+            public void row(ByteBuffer buf, int[] start, int[] end, int line) {
+                int s = start[InstanceReader.REF_LABELS];
+                int e = end[InstanceReader.REF_LABELS];
+                int length = numeric ? InstanceReader.countValues(buf, s, e) : e - s;
+                if (traits < 0) {
+                    traits = length;
+                }
+                if (length != traits || !parse(buf, s, e, value)) {
+                    System.err.println("\nPlease check instance ids and labels in your reference file at line " + line);
+                    badGoldLines.add(line);
+                    return;
+                }
+                if (ids.putIfAbsent(buf, start[InstanceReader.REF_ID], end[InstanceReader.REF_ID], goldRows) >= 0) {
+                    goldRepeated.add(buf, start[InstanceReader.REF_ID], end[InstanceReader.REF_ID]);
+                    return;
+                }
+                ensureRows(goldRows + 1);
+                store(buf, s, goldRows, goldLabels, goldValues);
+                goldRows++;
+            }
+        });
+    }
+
+    /**
+     * Takes the reference labels from an index instead of the reference file, the errors found when the index was
+     * built are reported again.
+     * @param index index of the reference file
+     */
+    public void useIndex(GoldIndex index) {
+        this.index = index;
+        traits = index.traits();
+        goldRows = index.rows();
+        matched = new boolean[goldRows];
+        if (numeric) {
+            predValues = new double[goldRows * traits];
+        } else {
+            predLabels = new byte[goldRows * traits];
+        }
+        for (int i = 0; i < index.getBadLines().size(); i++) {
+            System.err.println("\nPlease check instance ids and labels in your reference file at line "
+                    + index.getBadLines().get(i));
+        }
+        goldRepeated.count = index.getRepeated();
+        goldRepeated.examples.addAll(index.getRepeatedIds());
+    }
+
+    /**
+     * Writes the index of the parsed reference file. A reference file which can not be indexed is only reported.
+     * @param goldFile the reference file
+     * @param hash the hash of the reference file
+     */
+    public void writeIndex(String goldFile, long hash) {
+        try {
+            if (!GoldIndex.write(goldFile, hash, numeric, traits, goldRows, ids, goldLabels, goldValues,
+                    goldRepeated.count, goldRepeated.examples, badGoldLines)) {
+                System.err.println("\nThe ids of " + goldFile + " are not all 32 hex digits, it is not indexed.");
+                new File(GoldIndex.indexFile(goldFile)).delete();
+            }
+        } catch (IOException ex) {
+            System.err.println("\nThe index of " + goldFile + " can not be written to " + GoldIndex.indexFile(goldFile) + ".");
+        }
+    }
+
+    /**
+     * Looks up the predictions by id. The lines with wrong labels are reported with the ids which could not be
+     * joined, by {@link #report()}.
+     * @param predFile file of ids and predicted labels
+     * @throws IOException if the file can not be read
+     */
+    public void readPredictions(String predFile) throws IOException {
+        new InstanceReader(InstanceReader.ID_COLUMNS).read(predFile, predictionHandler());
+    }
+
+    /**
+     * Looks up the predictions of a stream by id, as {@link #readPredictions(String)} does.
+     * @param in stream of ids and predicted labels, not closed
+     * @throws IOException if the stream can not be read
+     */
+    public void readPredictions(InputStream in) throws IOException {
+        new InstanceReader(InstanceReader.ID_COLUMNS).read(in, predictionHandler());
+    }
+
+    private InstanceReader.RowHandler predictionHandler() {
+        final StringBuilder value = new StringBuilder();
+        return new InstanceReader.RowHandler() {
+            @Override
+            public void row(ByteBuffer buf, int[] start, int[] end, int line) {
+                int s = start[InstanceReader.REF_LABELS];
+                int e = end[InstanceReader.REF_LABELS];
+                int row = index != null ? index.get(buf, start[InstanceReader.REF_ID], end[InstanceReader.REF_ID], key)
+                        : ids.get(buf, start[InstanceReader.REF_ID], end[InstanceReader.REF_ID], key);
+                if (row < 0) {
+                    unknown.add(buf, start[InstanceReader.REF_ID], end[InstanceReader.REF_ID]);
+                    return;
+                }
+                int length = numeric ? InstanceReader.countValues(buf, s, e) : e - s;
+                if (length != traits || !parse(buf, s, e, value)) {
+                    messages.append("\nPlease check instance ids and labels in your prediction file at line ")
+                            .append(line).append(System.lineSeparator());
+                    return;
+                }
+                if (matched[row]) {
+                    predRepeated.add(buf, start[InstanceReader.REF_ID], end[InstanceReader.REF_ID]);
+                    return;
+                }
+                matched[row] = true;
+                store(buf, s, row, predLabels, predValues);
+            }
+        };
+    }
+
+    private void ensureRows(int rows) {
+        if (rows <= matched.length) {
+            return;
+        }
+        int grown = Math.max(Math.max(rows, 1024), matched.length + (matched.length >> 1));
+        matched = Arrays.copyOf(matched, grown);
+        if (numeric) {
+            goldValues = Arrays.copyOf(goldValues, grown * traits);
+            predValues = Arrays.copyOf(predValues, grown * traits);
+        } else {
+            goldLabels = Arrays.copyOf(goldLabels, grown * traits);
+            predLabels = Arrays.copyOf(predLabels, grown * traits);
+        }
+    }
+
+    /**
+     * Parses the values of a row of a numeric file, the labels of other files are stored as they are.
+     * @return false if a value is not a number
+     */
+    private boolean parse(ByteBuffer buf, int s, int e, StringBuilder value) {
+        if (!numeric) {
+            return true;
+        }
+        if (parsed == null) {
+            parsed = new double[traits];
+        }
+        try {
+            InstanceReader.parseValues(buf, s, e, parsed, value);
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Stores the labels of a row, or its values parsed by {@link #parse(ByteBuffer, int, int, StringBuilder)}.
+     */
+    private void store(ByteBuffer buf, int s, int row, byte[] labels, double[] values) {
+        if (numeric) {
+            System.arraycopy(parsed, 0, values, row * traits, traits);
+        } else {
+            for (int col = 0; col < traits; col++) {
+                labels[row * traits + col] = buf.get(s + col);
+            }
+        }
+    }
+
+    /**
+     * Reports the ids which could not be joined, to the standard error.
+     */
+    public void report() {
+        System.err.print(problems());
+    }
+
+    /**
+     * Reports the repeated ids of the reference file, to the standard error, for joins which share the reference
+     * file and report only the problems of their predictions.
+     */
+    public void reportGold() {
+        goldRepeated.print();
+    }
+
+    /**
+     * @return the report of the lines with wrong labels and of the ids which could not be joined, empty if there
+     * are none
+     */
+    public String problems() {
+        missing.count = 0;
+        missing.examples.clear();
+        int[] examples = new int[EXAMPLES];
+        int found = 0;
+        for (int row = 0; row < goldRows; row++) {
+            if (!matched[row]) {
+                if (found < EXAMPLES) {
+                    examples[found++] = row;
+                }
+                missing.count++;
+            }
+        }
+        if (found > 0) {
+            String[] missingIds = index != null ? null : ids.ids(Arrays.copyOf(examples, found));
+            for (int i = 0; i < found; i++) {
+                missing.examples.add(index != null ? index.id(examples[i]) : missingIds[i]);
+            }
+        }
+        StringBuilder str = new StringBuilder(messages);
+        Problem[] problems = {missing, unknown, goldRepeated, predRepeated};
+        for (int i = 0; i < problems.length; i++) {
+            str.append(problems[i].text());
+        }
+        return str.toString();
+    }
+
+    /**
+     * @return the joined instances, in the order of the reference file
+     */
+    public InstanceColumns columns() {
+        InstanceColumns data = new InstanceColumns(numeric);
+        if (numeric) {
+            double[] ref = new double[Math.max(traits, 0)];
+            double[] pred = new double[Math.max(traits, 0)];
+            for (int row = 0; row < goldRows; row++) {
+                if (matched[row]) {
+                    goldValues(row, ref);
+                    System.arraycopy(predValues, row * traits, pred, 0, traits);
+                    data.addValues(ref, pred);
+                }
+            }
+        } else {
+            byte[] ref = new byte[Math.max(traits, 0)];
+            byte[] pred = new byte[Math.max(traits, 0)];
+            for (int row = 0; row < goldRows; row++) {
+                if (matched[row]) {
+                    goldLabels(row, ref);
+                    System.arraycopy(predLabels, row * traits, pred, 0, traits);
+                    data.addLabels(ref, pred);
+                }
+            }
+        }
+        return data;
+    }
+
+    private void goldValues(int row, double[] ref) {
+        if (index == null) {
+            System.arraycopy(goldValues, row * traits, ref, 0, traits);
+            return;
+        }
+        for (int col = 0; col < traits; col++) {
+            ref[col] = index.value(row, col);
+        }
+    }
+
+    private void goldLabels(int row, byte[] ref) {
+        if (index == null) {
+            System.arraycopy(goldLabels, row * traits, ref, 0, traits);
+            return;
+        }
+        for (int col = 0; col < traits; col++) {
+            ref[col] = index.label(row, col);
+        }
+    }
+
+    /**
+     * Counts the ids of one kind of problem and keeps a few examples.
+     */
+    static class Problem {
+
+        private final String message;
+        private final ArrayList<String> examples = new ArrayList<String>();
+        private int count;
+
+        Problem(String message) {
+            this.message = message;
+        }
+
+        void add(ByteBuffer buf, int s, int e) {
+            if (examples.size() < EXAMPLES) {
+                examples.add(IdTable.text(buf, s, e));
+            }
+            count++;
+        }
+
+        void add(String id) {
+            if (examples.size() < EXAMPLES) {
+                examples.add(id);
+            }
+            count++;
+        }
+
+        void print() {
+            System.err.print(text());
+        }
+
+        String text() {
+            if (count == 0) {
+                return "";
+            }
+            StringBuilder str = new StringBuilder("\n" + count + " " + message);
+            if (!examples.isEmpty()) {
+                str.append(", e.g., ");
+                for (int i = 0; i < examples.size(); i++) {
+                    str.append(i > 0 ? ", " : "").append(examples.get(i));
+                }
+            }
+            return str.append(System.lineSeparator()).toString();
+        }
+    }
+}
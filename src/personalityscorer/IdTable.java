@@ -0,0 +1,276 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps instance ids to row numbers. The ids of the label files are 32 lowercase hex digits, i.e. 128 bits, which
+ * are packed into two longs and kept in an open addressing table with linear probing, so no String is built for
+ * the ids. Any other id is kept as a String in a separate map.
+ * @author Firoj Alam
+ */
+public class IdTable {
+
+    private static final int HEX_DIGITS = 32;
+    private static final int EMPTY = -1;
+
+    private long[] hi;
+    private long[] lo;
+    private int[] rows;
+    private int mask;
+    private int size;
+    private final HashMap<String, Integer> otherIds = new HashMap<String, Integer>();
+    private final long[] key = new long[2];
+
+    /**
+     * Default constructor
+     */
+    public IdTable() {
+        this(1024);
+    }
+
+    /**
+     * @param expected expected number of ids
+     */
+    public IdTable(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        hi = new long[capacity];
+        lo = new long[capacity];
+        rows = new int[capacity];
+        Arrays.fill(rows, EMPTY);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Packs an id of 32 lowercase hex digits into two longs.
+     * @param key receives the high and the low 64 bits
+     * @return false if the id is not made of 32 lowercase hex digits
+     */
+    public static boolean pack(ByteBuffer buf, int s, int e, long[] key) {
+        if (e - s != HEX_DIGITS) {
+            return false;
+        }
+        long h = 0, l = 0;
+        for (int i = 0; i < HEX_DIGITS; i++) {
+            int b = buf.get(s + i);
+            int d;
+            if (b >= '0' && b <= '9') {
+                d = b - '0';
+            } else if (b >= 'a' && b <= 'f') {
+                d = b - 'a' + 10;
+            } else {
+                return false;
+            }
+            if (i < 16) {
+                h = h << 4 | d;
+            } else {
+                l = l << 4 | d;
+            }
+        }
+        key[0] = h;
+        key[1] = l;
+        return true;
+    }
+
+    /**
+     * @return the row of the id, -1 if the id is not in the table
+     */
+    public int get(ByteBuffer buf, int s, int e) {
+        return get(buf, s, e, key);
+    }
+
+    /**
+     * Looks up an id with a key of the caller, so that threads can look up ids in a table which is no longer
+     * changed.
+     * @param key receives the packed id
+     * @return the row of the id, -1 if the id is not in the table
+     */
+    public int get(ByteBuffer buf, int s, int e, long[] key) {
+        if (!pack(buf, s, e, key)) {
+            Integer row = otherIds.get(text(buf, s, e));
+            return row == null ? EMPTY : row;
+        }
+        return get(key[0], key[1]);
+    }
+
+    /**
+     * @return the row of a packed id, -1 if the id is not in the table
+     */
+    public int get(long h, long l) {
+        int i = slot(h, l);
+        while (rows[i] != EMPTY) {
+            if (hi[i] == h && lo[i] == l) {
+                return rows[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Adds an id unless it is already in the table.
+     * @param row row of the id
+     * @return the row of the id already in the table, -1 if the id was added
+     */
+    public int putIfAbsent(ByteBuffer buf, int s, int e, int row) {
+        if (!pack(buf, s, e, key)) {
+            String id = text(buf, s, e);
+            Integer old = otherIds.get(id);
+            if (old != null) {
+                return old;
+            }
+            otherIds.put(id, row);
+            return EMPTY;
+        }
+        return putIfAbsent(key[0], key[1], row);
+    }
+
+    /**
+     * Adds a packed id unless it is already in the table.
+     * @param row row of the id
+     * @return the row of the id already in the table, -1 if the id was added
+     */
+    public int putIfAbsent(long h, long l, int row) {
+        int i = slot(h, l);
+        while (rows[i] != EMPTY) {
+            if (hi[i] == h && lo[i] == l) {
+                return rows[i];
+            }
+            i = (i + 1) & mask;
+        }
+        hi[i] = h;
+        lo[i] = l;
+        rows[i] = row;
+        if (++size * 2 > rows.length) {
+            grow();
+        }
+        return EMPTY;
+    }
+
+    private void grow() {
+        long[] oldHi = hi;
+        long[] oldLo = lo;
+        int[] oldRows = rows;
+        allocate(oldRows.length * 2);
+        for (int j = 0; j < oldRows.length; j++) {
+            if (oldRows[j] != EMPTY) {
+                int i = slot(oldHi[j], oldLo[j]);
+                while (rows[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                hi[i] = oldHi[j];
+                lo[i] = oldLo[j];
+                rows[i] = oldRows[j];
+            }
+        }
+    }
+
+    private int slot(long h, long l) {
+        return mix(h, l) & mask;
+    }
+
+    /**
+     * @return the hash of a packed id, the first slot of the id is the hash masked by the capacity minus one
+     */
+    static int mix(long h, long l) {
+        long x = h * 0x9E3779B97F4A7C15L ^ l;
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        return (int) x;
+    }
+
+    /**
+     * Copies the packed ids in the order of their rows.
+     * @param hiByRow receives the high 64 bits of the id of each row
+     * @param loByRow receives the low 64 bits of the id of each row
+     * @return false if some ids are not made of 32 lowercase hex digits
+     */
+    boolean packedIds(long[] hiByRow, long[] loByRow) {
+        if (!otherIds.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] != EMPTY) {
+                hiByRow[rows[i]] = hi[i];
+                loByRow[rows[i]] = lo[i];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the slots of the table, holding the row of each packed id or -1
+     */
+    int[] slots() {
+        return rows;
+    }
+
+    /**
+     * @return the number of ids in the table
+     */
+    public int size() {
+        return size + otherIds.size();
+    }
+
+    /**
+     * Finds the ids of a few rows, e.g., to report them; the whole table is scanned.
+     * @param wanted the rows
+     * @return the id of each row, in the order of the rows
+     */
+    String[] ids(int[] wanted) {
+        HashMap<Integer, Integer> positions = new HashMap<Integer, Integer>();
+        for (int i = 0; i < wanted.length; i++) {
+            positions.put(wanted[i], i);
+        }
+        String[] found = new String[wanted.length];
+        for (int i = 0; i < rows.length; i++) {
+            Integer k = rows[i] == EMPTY ? null : positions.get(rows[i]);
+            if (k != null) {
+                found[k] = hex(hi[i], lo[i]);
+            }
+        }
+        for (Map.Entry<String, Integer> entry : otherIds.entrySet()) {
+            Integer k = positions.get(entry.getValue());
+            if (k != null) {
+                found[k] = entry.getKey();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the 32 lowercase hex digits of a packed id
+     */
+    static String hex(long h, long l) {
+        char[] digits = new char[HEX_DIGITS];
+        for (int i = 0; i < 16; i++) {
+            digits[15 - i] = Character.forDigit((int) (h >>> (4 * i)) & 0xF, 16);
+            digits[31 - i] = Character.forDigit((int) (l >>> (4 * i)) & 0xF, 16);
+        }
+        return new String(digits);
+    }
+
+    static String text(ByteBuffer buf, int s, int e) {
+        byte[] bytes = new byte[e - s];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(s + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Keeps the instances of a label file column by column: one byte array of reference labels and one of predicted
+ * labels per trait, or one double array of reference values and one of predicted values per trait for numeric
+ * predictions. The scorers can iterate over a trait with a tight loop over primitive arrays instead of
+ * following a reference to a separate array for every instance.
+ * @author Firoj Alam
+ */
+public class InstanceColumns {
+
+    private final boolean numeric;
+    private int traits = -1;
+    private int size;
+    private byte[][] refLabels;
+    private byte[][] predLabels;
+    private double[][] refValues;
+    private double[][] predValues;
+    private LabelBits[] bits;
+
+    /**
+     * @param numeric whether the columns hold numeric values instead of labels
+     */
+    public InstanceColumns(boolean numeric) {
+        this.numeric = numeric;
+    }
+
+    /**
+     * Reads a label file into columns.
+     * @param fileName input file
+     * @return the columns of the file
+     * @throws IOException if the file can not be read
+     */
+    public static InstanceColumns readLabels(String fileName) throws IOException {
+        InstanceColumns columns = new InstanceColumns(false);
+        new InstanceReader().read(fileName, columns.new Handler());
+        return columns;
+    }
+
+    /**
+     * Reads a numeric label file into columns.
+     * @param fileName input file
+     * @return the columns of the file
+     * @throws IOException if the file can not be read
+     */
+    public static InstanceColumns readNumeric(String fileName) throws IOException {
+        InstanceColumns columns = new InstanceColumns(true);
+        new InstanceReader().read(fileName, columns.new Handler());
+        return columns;
+    }
+
+    /**
+     * Adds the lines of the label file to the columns.
+     */
+    private class Handler implements InstanceReader.RowHandler {
+
+        private final StringBuilder value = new StringBuilder();
+        private double[] ref;
+        private double[] pred;
+
+        @Override
+        public void row(ByteBuffer buf, int[] start, int[] end, int line) {
+            int refLen, predLen;
+            if (numeric) {
+                refLen = InstanceReader.countValues(buf, start[InstanceReader.REF_LABELS], end[InstanceReader.REF_LABELS]);
+                predLen = InstanceReader.countValues(buf, start[InstanceReader.PRED_LABELS], end[InstanceReader.PRED_LABELS]);
+            } else {
+                refLen = end[InstanceReader.REF_LABELS] - start[InstanceReader.REF_LABELS];
+                predLen = end[InstanceReader.PRED_LABELS] - start[InstanceReader.PRED_LABELS];
+            }
+            if (!InstanceReader.sameColumn(buf, start[InstanceReader.REF_ID], end[InstanceReader.REF_ID],
+                    start[InstanceReader.PRED_ID], end[InstanceReader.PRED_ID]) && refLen != predLen) {
+                System.err.println("\nPlease check instance ids and labels in your input file at line " + line);
+                return;
+            }
+            if (traits < 0) {
+                init(refLen);
+                if (numeric) {
+                    ref = new double[refLen];
+                    pred = new double[refLen];
+                }
+            }
+            if (refLen != traits || predLen != traits) {
+                System.err.println("\nPlease check instance ids and labels in your input file at line " + line);
+                return;
+            }
+            if (numeric) {
+                InstanceReader.parseValues(buf, start[InstanceReader.REF_LABELS], end[InstanceReader.REF_LABELS], ref, value);
+                InstanceReader.parseValues(buf, start[InstanceReader.PRED_LABELS], end[InstanceReader.PRED_LABELS], pred, value);
+                addValues(ref, pred);
+            } else {
+                bits = null;
+                ensureCapacity(size + 1);
+                for (int col = 0; col < traits; col++) {
+                    refLabels[col][size] = buf.get(start[InstanceReader.REF_LABELS] + col);
+                    predLabels[col][size] = buf.get(start[InstanceReader.PRED_LABELS] + col);
+                }
+                size++;
+            }
+        }
+    }
+
+    private void init(int traits) {
+        this.traits = traits;
+        if (numeric) {
+            refValues = new double[traits][1024];
+            predValues = new double[traits][1024];
+        } else {
+            refLabels = new byte[traits][1024];
+            predLabels = new byte[traits][1024];
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        int length = numeric ? refValues[0].length : refLabels[0].length;
+        if (capacity <= length) {
+            return;
+        }
+        int grown = Math.max(capacity, length + (length >> 1));
+        for (int col = 0; col < traits; col++) {
+            if (numeric) {
+                refValues[col] = Arrays.copyOf(refValues[col], grown);
+                predValues[col] = Arrays.copyOf(predValues[col], grown);
+            } else {
+                refLabels[col] = Arrays.copyOf(refLabels[col], grown);
+                predLabels[col] = Arrays.copyOf(predLabels[col], grown);
+            }
+        }
+    }
+
+    /**
+     * Adds one instance of labels.
+     * @param ref reference labels of each trait
+     * @param pred predicted labels of each trait
+     */
+    public void addLabels(byte[] ref, byte[] pred) {
+        bits = null;
+        if (traits < 0) {
+            init(ref.length);
+        }
+        ensureCapacity(size + 1);
+        for (int col = 0; col < traits; col++) {
+            refLabels[col][size] = ref[col];
+            predLabels[col][size] = pred[col];
+        }
+        size++;
+    }
+
+    /**
+     * Adds one instance of numeric values.
+     * @param ref reference values of each trait
+     * @param pred predicted values of each trait
+     */
+    public void addValues(double[] ref, double[] pred) {
+        if (traits < 0) {
+            init(ref.length);
+        }
+        ensureCapacity(size + 1);
+        for (int col = 0; col < traits; col++) {
+            refValues[col][size] = ref[col];
+            predValues[col][size] = pred[col];
+        }
+        size++;
+    }
+
+    /**
+     * @return whether the columns hold numeric values
+     */
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    /**
+     * @return the number of traits, 0 if no instance was read
+     */
+    public int traits() {
+        return Math.max(traits, 0);
+    }
+
+    /**
+     * @return the number of instances
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param trait index of the trait
+     * @return the reference labels of the trait, the array may be longer than the number of instances
+     */
+    public byte[] refLabels(int trait) {
+        return refLabels[trait];
+    }
+
+    /**
+     * @param trait index of the trait
+     * @return the predicted labels of the trait, the array may be longer than the number of instances
+     */
+    public byte[] predLabels(int trait) {
+        return predLabels[trait];
+    }
+
+    /**
+     * Returns the bit-sliced encoding of the labels of a trait. The encoding is made on the first call and then
+     * shared by all the scorers.
+     * @param trait index of the trait
+     * @return the encoded labels, or null if the labels of the trait can not be encoded
+     * @see LabelBits#encode(byte[], byte[], int)
+     */
+    public synchronized LabelBits labelBits(int trait) {
+        if (bits == null) {
+            bits = new LabelBits[traits()];
+        }
+        if (bits[trait] == null) {
+            bits[trait] = LabelBits.encode(refLabels[trait], predLabels[trait], size);
+        }
+        return bits[trait];
+    }
+
+    /**
+     * @param trait index of the trait
+     * @return the reference values of the trait, the array may be longer than the number of instances
+     */
+    public double[] refValues(int trait) {
+        return refValues[trait];
+    }
+
+    /**
+     * @param trait index of the trait
+     * @return the predicted values of the trait, the array may be longer than the number of instances
+     */
+    public double[] predValues(int trait) {
+        return predValues[trait];
+    }
+}
@@ -0,0 +1,478 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads the label file through a memory-mapped channel and scans the bytes directly, without building a
+ * String for every line. The file is mapped in windows, so files larger than 2GB can be read as well.
+ * For every line the offsets of the first columns are handed to a {@link RowHandler}; the reference
+ * file-id is column 0, the reference labels column 1, the predicted file-id column 5 and the predicted
+ * labels column 6. Columns are separated by any run of white spaces, as in the original format.
+ * Files compressed with gzip or zlib deflate, recognized by their first bytes, are decompressed on a separate
+ * thread through a {@link ReadAheadInputStream} and scanned from a buffer instead, as is the standard input, named
+ * "-", or a named pipe, whose lines are scanned as they arrive.
+ * @author Firoj Alam
+ */
+public class InstanceReader {
+
+    public static final int REF_ID = 0;
+    public static final int REF_LABELS = 1;
+    public static final int PRED_ID = 5;
+    public static final int PRED_LABELS = 6;
+    /**
+     * Number of columns a line needs to have, the remaining columns are not scanned.
+     */
+    public static final int COLUMNS = 7;
+    /**
+     * Columns of a file holding only ids and labels, as the separate reference and prediction files: the id is
+     * column 0 and the labels column 1.
+     */
+    public static final int ID_COLUMNS = 2;
+    private static final int WINDOW_SIZE = 64 << 20;
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+    public static final String STDIN = "-";
+    // integers of up to 15 digits and the powers of ten up to 1e15 are exact doubles
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15};
+
+    /**
+     * Receives the lines of the label file. The offsets are only valid during the call, the buffer must not be kept.
+     */
+    public interface RowHandler {
+
+        /**
+         * @param buf buffer containing the line
+         * @param start start offsets of the columns in the buffer
+         * @param end end offsets (exclusive) of the columns in the buffer
+         * @param line line number in the input file, starting from 1
+         */
+        void row(ByteBuffer buf, int[] start, int[] end, int line);
+    }
+
+    private final int columns;
+    private final int[] start;
+    private final int[] end;
+    private int line = 1;
+
+    /**
+     * Default constructor
+     */
+    public InstanceReader() {
+        this(COLUMNS);
+    }
+
+    /**
+     * @param columns number of columns a line needs to have
+     */
+    public InstanceReader(int columns) {
+        this.columns = columns;
+        this.start = new int[columns];
+        this.end = new int[columns];
+    }
+
+    /**
+     * Maps the file window by window and passes every line to the handler.
+     * @param fileName input file
+     * @param handler receives the lines
+     * @throws IOException if the file can not be read or a line does not have the expected columns
+     */
+    public void read(String fileName, RowHandler handler) throws IOException {
+        if (isStream(fileName)) {
+            InputStream in = decompress(STDIN.equals(fileName) ? System.in : new FileInputStream(fileName));
+            try {
+                read(in, handler);
+            } finally {
+                in.close();
+            }
+            return;
+        }
+        InputStream compressed = openCompressed(fileName);
+        if (compressed != null) {
+            InputStream in = new ReadAheadInputStream(compressed);
+            try {
+                read(in, handler);
+            } finally {
+                in.close();
+            }
+            return;
+        }
+        FileInputStream in = new FileInputStream(fileName);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(WINDOW_SIZE, size - position);
+                boolean eof = position + length == size;
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int consumed = scan(buf, 0, (int) length, eof, handler);
+                if (consumed == 0 && !eof) {
+                    throw new IOException("Line " + line + " is longer than " + WINDOW_SIZE + " bytes.");
+                }
+                position += consumed;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a stream chunk by chunk and passes every line to the handler. The stream is not closed.
+     * @param in input stream
+     * @param handler receives the lines
+     * @throws IOException if the stream can not be read or a line does not have the expected columns
+     */
+    public void read(InputStream in, RowHandler handler) throws IOException {
+        byte[] bytes = new byte[STREAM_BUFFER_SIZE];
+        int filled = 0;
+        boolean eof = false;
+        while (!eof) {
+            int n = in.read(bytes, filled, bytes.length - filled);
+            if (n < 0) {
+                eof = true;
+            } else {
+                filled += n;
+            }
+            int consumed = scan(ByteBuffer.wrap(bytes), 0, filled, eof, handler);
+            System.arraycopy(bytes, consumed, bytes, 0, filled - consumed);
+            filled -= consumed;
+            if (filled == bytes.length) {
+                if (bytes.length >= WINDOW_SIZE) {
+                    throw new IOException("Line " + line + " is longer than " + WINDOW_SIZE + " bytes.");
+                }
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+        }
+    }
+
+    /**
+     * @param fileName input file, "-" for the standard input
+     * @return whether the input can only be read as a stream, i.e., it is the standard input or not a regular
+     * file, such as a named pipe
+     */
+    public static boolean isStream(String fileName) {
+        return STDIN.equals(fileName) || !new File(fileName).isFile();
+    }
+
+    /**
+     * Decompresses a stream which starts with a gzip or zlib header, on a separate thread through a
+     * {@link ReadAheadInputStream}. Other streams are only buffered, so their lines are scanned as they arrive.
+     * @param in the standard input or a pipe, closed by the returned stream
+     * @return the stream to read
+     * @throws IOException if the stream can not be read
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, STREAM_BUFFER_SIZE);
+        buffered.mark(2);
+        int b0 = buffered.read();
+        int b1 = b0 < 0 ? -1 : buffered.read();
+        buffered.reset();
+        if (isGzip(b0, b1)) {
+            return new ReadAheadInputStream(new GZIPInputStream(buffered, STREAM_BUFFER_SIZE), true);
+        }
+        if (isZlib(b0, b1)) {
+            return new ReadAheadInputStream(new InflaterInputStream(buffered), true);
+        }
+        return buffered;
+    }
+
+    private static boolean isGzip(int b0, int b1) {
+        return b0 == 0x1F && b1 == 0x8B;
+    }
+
+    private static boolean isZlib(int b0, int b1) {
+        return b0 == 0x78 && (b1 == 0x01 || b1 == 0x5E || b1 == 0x9C || b1 == 0xDA);
+    }
+
+    /**
+     * Opens a file compressed with gzip or zlib deflate. Zlib streams are recognized by the headers written by
+     * the four compression levels of zlib with the default window, so a label file is not taken for one.
+     * @param fileName input file
+     * @return the decompressed stream, null if the file does not start with a gzip or zlib header
+     * @throws IOException if the file can not be read
+     */
+    public static InputStream openCompressed(String fileName) throws IOException {
+        FileInputStream in = new FileInputStream(fileName);
+        int b0 = in.read();
+        int b1 = in.read();
+        in.close();
+        if (isGzip(b0, b1)) {
+            return new GZIPInputStream(new FileInputStream(fileName), STREAM_BUFFER_SIZE);
+        }
+        if (isZlib(b0, b1)) {
+            return new InflaterInputStream(new BufferedInputStream(new FileInputStream(fileName), STREAM_BUFFER_SIZE));
+        }
+        return null;
+    }
+
+    /**
+     * @param fileName input file
+     * @return whether the file is compressed with gzip or zlib deflate
+     * @throws IOException if the file can not be read
+     */
+    public static boolean isCompressed(String fileName) throws IOException {
+        InputStream in = openCompressed(fileName);
+        if (in == null) {
+            return false;
+        }
+        in.close();
+        return true;
+    }
+
+    /**
+     * Scans the complete lines of the buffer between the two offsets.
+     * @param buf buffer containing the lines
+     * @param from offset of the first line
+     * @param limit end of the valid bytes
+     * @param eof whether the last line ends at the limit even without a line break
+     * @param handler receives the lines
+     * @return number of bytes consumed, the bytes of an incomplete last line are not consumed
+     * @throws IOException if a line does not have the expected columns
+     */
+    public int scan(ByteBuffer buf, int from, int limit, boolean eof, RowHandler handler) throws IOException {
+        int pos = from;
+        while (pos < limit) {
+            int eol = pos;
+            while (eol < limit && buf.get(eol) != '\n') {
+                eol++;
+            }
+            if (eol == limit && !eof) {
+                break;
+            }
+            int found = split(buf, pos, eol);
+            if (found < columns) {
+                throw new IOException("Line " + line + " has " + found + " columns instead of at least " + columns + ".");
+            }
+            handler.row(buf, start, end, line);
+            line++;
+            pos = eol + 1;
+        }
+        return Math.min(pos, limit) - from;
+    }
+
+    /**
+     * Finds the column boundaries of a line, a line starting with a white space has an empty first column.
+     * @return the number of columns found, at most the number of columns of the reader
+     */
+    private int split(ByteBuffer buf, int pos, int eol) {
+        int col = 0;
+        if (pos < eol && isSpace(buf.get(pos))) {
+            start[0] = pos;
+            end[0] = pos;
+            col = 1;
+        }
+        while (pos < eol && col < columns) {
+            while (pos < eol && isSpace(buf.get(pos))) {
+                pos++;
+            }
+            if (pos == eol) {
+                break;
+            }
+            start[col] = pos;
+            while (pos < eol && !isSpace(buf.get(pos))) {
+                pos++;
+            }
+            end[col] = pos;
+            col++;
+        }
+        return col;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    /**
+     * Compares two columns byte by byte.
+     * @return true if both columns hold the same bytes
+     */
+    public static boolean sameColumn(ByteBuffer buf, int s1, int e1, int s2, int e2) {
+        if (e1 - s1 != e2 - s2) {
+            return false;
+        }
+        for (int i = 0; i < e1 - s1; i++) {
+            if (buf.get(s1 + i) != buf.get(s2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the '#' separated values of a numeric column, empty trailing values are not counted as in String.split.
+     */
+    public static int countValues(ByteBuffer buf, int s, int e) {
+        while (e > s && buf.get(e - 1) == '#') {
+            e--;
+        }
+        if (e == s) {
+            return 1;
+        }
+        int n = 1;
+        for (int i = s; i < e; i++) {
+            if (buf.get(i) == '#') {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Parses the '#' separated values of a numeric column.
+     * @param values receives the values, as many values are parsed as the array holds
+     * @param value buffer used to collect the characters of a value which is not parsed by the fast path
+     * @throws NumberFormatException if a value is not a number
+     */
+    public static void parseValues(ByteBuffer buf, int s, int e, double[] values, StringBuilder value) {
+        int k = 0;
+        while (k < values.length) {
+            int end = s;
+            while (end < e && buf.get(end) != '#') {
+                end++;
+            }
+            values[k++] = parseDouble(buf, s, end, value);
+            s = end + 1;
+        }
+    }
+
+    /**
+     * Parses a number from its bytes. Plain decimals such as 0.25 or -12.5 with at most 15 digits are decoded
+     * directly: the digits make an exact integer and dividing it by an exact power of ten gives the correctly
+     * rounded value, the same as {@link Double#parseDouble(String)}. Any other text, with an exponent, more digits
+     * or other characters, is parsed by {@link Double#parseDouble(String)}.
+     * @param value buffer used to collect the characters for the slow path
+     * @return the number
+     * @throws NumberFormatException if the text is not a number
+     */
+    public static double parseDouble(ByteBuffer buf, int s, int e, StringBuilder value) {
+        int i = s;
+        boolean negative = false;
+        if (i < e && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            negative = buf.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; i < e; i++) {
+            byte b = buf.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else if (b == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == e && digits > 0 && digits <= MAX_EXACT_DIGITS) {
+            double v = fraction > 0 ? mantissa / POWERS_OF_TEN[fraction] : mantissa;
+            return negative ? -v : v;
+        }
+        value.setLength(0);
+        for (i = s; i < e; i++) {
+            value.append((char) (buf.get(i) & 0xFF));
+        }
+        return Double.parseDouble(value.toString());
+    }
+
+    /**
+     * Reads the label file, each instance is a char array holding the reference labels followed by the predicted labels.
+     * @param fileName input file
+     * @return the value of instanceList
+     * @throws IOException if the file can not be read
+     */
+    public ArrayList<char[]> readLabelList(String fileName) throws IOException {
+        final ArrayList<char[]> instanceList = new ArrayList<char[]>();
+        read(fileName, new RowHandler() {
+            @Override
+            public void row(ByteBuffer buf, int[] start, int[] end, int line) {
+                int refLen = end[REF_LABELS] - start[REF_LABELS];
+                int predLen = end[PRED_LABELS] - start[PRED_LABELS];
+                if (!sameColumn(buf, start[REF_ID], end[REF_ID], start[PRED_ID], end[PRED_ID]) && refLen != predLen) {
+                    System.err.println("\nPlease check instance ids and labels in your input file at line " + line);
+                    return;
+                }
+                char[] result = new char[refLen + predLen];
+                for (int i = 0; i < refLen; i++) {
+                    result[i] = (char) (buf.get(start[REF_LABELS] + i) & 0xFF);
+                }
+                for (int i = 0; i < predLen; i++) {
+                    result[refLen + i] = (char) (buf.get(start[PRED_LABELS] + i) & 0xFF);
+                }
+                instanceList.add(result);
+            }
+        });
+        return instanceList;
+    }
+
+    /**
+     * Reads the numeric label file, each instance is a String array holding the reference values followed by the predicted values.
+     * @param fileName input file
+     * @return the value of instanceList
+     * @throws IOException if the file can not be read
+     */
+    public ArrayList<String[]> readNumericList(String fileName) throws IOException {
+        final ArrayList<String[]> instanceList = new ArrayList<String[]>();
+        read(fileName, new RowHandler() {
+            private byte[] scratch = new byte[64];
+
+            @Override
+            public void row(ByteBuffer buf, int[] start, int[] end, int line) {
+                int refLen = countValues(buf, start[REF_LABELS], end[REF_LABELS]);
+                int predLen = countValues(buf, start[PRED_LABELS], end[PRED_LABELS]);
+                if (!sameColumn(buf, start[REF_ID], end[REF_ID], start[PRED_ID], end[PRED_ID]) && refLen != predLen) {
+                    System.err.println("\nPlease check instance ids and labels in your input file at line " + line);
+                    return;
+                }
+                String[] result = new String[refLen + predLen];
+                splitValues(buf, start[REF_LABELS], end[REF_LABELS], result, 0, refLen);
+                splitValues(buf, start[PRED_LABELS], end[PRED_LABELS], result, refLen, predLen);
+                instanceList.add(result);
+            }
+
+            private void splitValues(ByteBuffer buf, int s, int e, String[] result, int offset, int n) {
+                for (int k = 0; k < n; k++) {
+                    int v = s;
+                    while (v < e && buf.get(v) != '#') {
+                        v++;
+                    }
+                    int len = v - s;
+                    if (scratch.length < len) {
+                        scratch = new byte[len];
+                    }
+                    for (int i = 0; i < len; i++) {
+                        scratch[i] = buf.get(s + i);
+                    }
+                    result[offset + k] = new String(scratch, 0, len, StandardCharsets.ISO_8859_1);
+                    s = v + 1;
+                }
+            }
+        });
+        return instanceList;
+    }
+}
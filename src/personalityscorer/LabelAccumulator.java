@@ -0,0 +1,223 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Updates the label counts with every line of the label file and then drops the line, so the memory used does
+ * not depend on the size of the input file. The number of traits is taken from the first instance.
+ * As long as all labels are y/n the lines are counted in a {@link PatternCube}, a single increment per line;
+ * at the first other label the cube is turned into per-trait {@link ConfusionCounts} which are updated from then on.
+ * @author Firoj Alam
+ */
+public class LabelAccumulator extends Accumulator<LabelAccumulator> {
+
+    private PatternCube cube;
+    private int seenPositive;
+    private int seenNegative;
+    private int negativeFirst;
+    private ConfusionCounts[] counts;
+    private long instances;
+
+    /**
+     * Default constructor
+     */
+    public LabelAccumulator() {
+    }
+
+    /**
+     * @param traits number of traits of the instances
+     */
+    public LabelAccumulator(int traits) {
+        init(traits);
+    }
+
+    private void init(int traits) {
+        this.traits = traits;
+        if (traits <= PatternCube.MAX_TRAITS) {
+            cube = new PatternCube(traits);
+        } else {
+            counts = newCounts(traits);
+        }
+    }
+
+    @Override
+    public void row(ByteBuffer buf, int[] start, int[] end, int line) {
+        countLine();
+        int refLen = end[InstanceReader.REF_LABELS] - start[InstanceReader.REF_LABELS];
+        int predLen = end[InstanceReader.PRED_LABELS] - start[InstanceReader.PRED_LABELS];
+        if (!InstanceReader.sameColumn(buf, start[InstanceReader.REF_ID], end[InstanceReader.REF_ID],
+                start[InstanceReader.PRED_ID], end[InstanceReader.PRED_ID]) && refLen != predLen) {
+            badLine();
+            return;
+        }
+        if (traits < 0) {
+            init(refLen);
+        }
+        if (refLen != traits || predLen != traits) {
+            badLine();
+            return;
+        }
+        int refStart = start[InstanceReader.REF_LABELS];
+        int predStart = start[InstanceReader.PRED_LABELS];
+        if (cube != null) {
+            int r = 0, p = 0;
+            boolean binary = true;
+            for (int col = 0; col < traits && binary; col++) {
+                int rb = PatternCube.bit(buf.get(refStart + col));
+                int pb = PatternCube.bit(buf.get(predStart + col));
+                binary = rb >= 0 && pb >= 0;
+                r |= rb << col;
+                p |= pb << col;
+            }
+            if (binary) {
+                int mask = (1 << traits) - 1;
+                negativeFirst |= ~r & mask & ~seenNegative & ~seenPositive;
+                seenPositive |= r;
+                seenNegative |= ~r & mask;
+                cube.add(r, p);
+                instances++;
+                return;
+            }
+            counts = cubeCounts();
+            cube = null;
+        }
+        for (int col = 0; col < traits; col++) {
+            char ref = (char) (buf.get(refStart + col) & 0xFF);
+            char pred = (char) (buf.get(predStart + col) & 0xFF);
+            counts[col].add(ref, pred);
+        }
+        instances++;
+    }
+
+    private static ConfusionCounts[] newCounts(int traits) {
+        ConfusionCounts[] counts = new ConfusionCounts[traits];
+        for (int col = 0; col < traits; col++) {
+            counts[col] = new ConfusionCounts();
+        }
+        return counts;
+    }
+
+    @Override
+    public LabelAccumulator emptyCopy() {
+        LabelAccumulator part = new LabelAccumulator(traits);
+        part.setDeferErrors(true);
+        return part;
+    }
+
+    @Override
+    public void merge(LabelAccumulator other) {
+        mergeLines(other);
+        if (other.traits < 0) {
+            return;
+        }
+        if (traits < 0) {
+            init(other.traits);
+        }
+        if (cube != null && other.cube != null) {
+            int seenLeft = seenPositive | seenNegative;
+            negativeFirst = (negativeFirst & seenLeft) | (other.negativeFirst & ~seenLeft);
+            seenPositive |= other.seenPositive;
+            seenNegative |= other.seenNegative;
+            cube.merge(other.cube);
+        } else {
+            if (cube != null) {
+                counts = cubeCounts();
+                cube = null;
+            }
+            ConfusionCounts[] otherCounts = other.getCounts();
+            for (int col = 0; col < traits; col++) {
+                counts[col].merge(otherCounts[col]);
+            }
+        }
+        instances += other.instances;
+    }
+
+    @Override
+    protected int kind() {
+        return 'L';
+    }
+
+    @Override
+    protected void writeState(DataOutput out) throws IOException {
+        out.writeLong(instances);
+        out.writeBoolean(cube != null);
+        if (cube != null) {
+            out.writeInt(seenPositive);
+            out.writeInt(seenNegative);
+            out.writeInt(negativeFirst);
+            cube.write(out);
+        } else {
+            for (int col = 0; col < traits; col++) {
+                counts[col].write(out);
+            }
+        }
+    }
+
+    @Override
+    protected LabelAccumulator readState(int traits, DataInput in) throws IOException {
+        LabelAccumulator part = new LabelAccumulator(traits);
+        part.instances = in.readLong();
+        if (in.readBoolean()) {
+            if (part.cube == null) {
+                throw new IOException("A pattern cube can not hold " + traits + " traits.");
+            }
+            part.seenPositive = in.readInt();
+            part.seenNegative = in.readInt();
+            part.negativeFirst = in.readInt();
+            part.cube = PatternCube.read(in);
+            if (part.cube.traits() != traits) {
+                throw new IOException("The pattern cube has " + part.cube.traits() + " traits, expected " + traits + ".");
+            }
+        } else {
+            part.cube = null;
+            part.counts = new ConfusionCounts[traits];
+            for (int col = 0; col < traits; col++) {
+                part.counts[col] = ConfusionCounts.read(in);
+            }
+        }
+        return part;
+    }
+
+    /**
+     * Derives the per-trait counts from the cube, keeping the order in which the reference labels were seen.
+     */
+    private ConfusionCounts[] cubeCounts() {
+        ConfusionCounts[] traitCounts = new ConfusionCounts[traits];
+        for (int col = 0; col < traits; col++) {
+            traitCounts[col] = cube.traitCounts(col, (negativeFirst >>> col & 1) != 0);
+        }
+        return traitCounts;
+    }
+
+    /**
+     * @return the label counts of each trait, null if no instance was read
+     */
+    public ConfusionCounts[] getCounts() {
+        return cube != null ? cubeCounts() : counts;
+    }
+
+    /**
+     * @return the joint pattern counts, null if a label other than y/n was read or no instance was read
+     */
+    public PatternCube getCube() {
+        return cube;
+    }
+
+    /**
+     * @return the number of instances counted
+     */
+    public long getInstances() {
+        return instances;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.util.Arrays;
+
+/**
+ * Bit-sliced encoding of the reference and predicted labels of one trait. Every label gets a 2-bit code which is
+ * stored in two bit planes, bit i of a plane belonging to instance i: codes 0 to 2 are the classes in the order of
+ * their first appearance in the reference labels (followed by 'o' when it is not a class and there is room for it),
+ * code 3 is any other predicted label. A binary trait only needs the low plane. The pairs of reference and
+ * predicted codes are counted with {@link Long#bitCount(long)} over 64 instances at a time.
+ * @author Firoj Alam
+ */
+public class LabelBits {
+
+    /**
+     * Code of the predicted labels which are neither a class nor 'o'.
+     */
+    public static final int OTHER = 3;
+
+    private final char[] labels;
+    private final int classCount;
+    private final int size;
+    private final long[] refLo;
+    private final long[] refHi;
+    private final long[] predLo;
+    private final long[] predHi;
+
+    private LabelBits(char[] labels, int classCount, int size, boolean twoPlanes) {
+        this.labels = labels;
+        this.classCount = classCount;
+        this.size = size;
+        int words = (size + 63) >>> 6;
+        refLo = new long[words];
+        predLo = new long[words];
+        refHi = twoPlanes ? new long[words] : null;
+        predHi = twoPlanes ? new long[words] : null;
+    }
+
+    /**
+     * Encodes the labels of one trait.
+     * @param ref reference labels
+     * @param pred predicted labels
+     * @param size number of instances
+     * @return the encoded labels, or null if the trait has more than three classes or the predicted label 'o'
+     * can not be given a code of its own
+     */
+    public static LabelBits encode(byte[] ref, byte[] pred, int size) {
+        int[] code = new int[256];
+        Arrays.fill(code, -1);
+        char[] labels = new char[3];
+        int classCount = 0;
+        for (int row = 0; row < size; row++) {
+            int ac = ref[row] & 0xFF;
+            if (code[ac] < 0) {
+                if (classCount == 3) {
+                    return null;
+                }
+                code[ac] = classCount;
+                labels[classCount++] = (char) ac;
+            }
+        }
+        int labelCount = classCount;
+        boolean other = false;
+        for (int row = 0; row < size; row++) {
+            int p = pred[row] & 0xFF;
+            if (code[p] >= 0) {
+                continue;
+            }
+            if (p == 'o') {
+                if (labelCount == 3) {
+                    return null;
+                }
+                code[p] = labelCount;
+                labels[labelCount++] = 'o';
+            } else {
+                code[p] = OTHER;
+                other = true;
+            }
+        }
+        boolean twoPlanes = labelCount > 2 || other;
+        LabelBits bits = new LabelBits(labels, classCount, size, twoPlanes);
+        for (int row = 0; row < size; row++) {
+            int word = row >>> 6;
+            long bit = 1L << row;
+            int r = code[ref[row] & 0xFF];
+            int p = code[pred[row] & 0xFF];
+            if ((r & 1) != 0) {
+                bits.refLo[word] |= bit;
+            }
+            if ((p & 1) != 0) {
+                bits.predLo[word] |= bit;
+            }
+            if (twoPlanes) {
+                if ((r & 2) != 0) {
+                    bits.refHi[word] |= bit;
+                }
+                if ((p & 2) != 0) {
+                    bits.predHi[word] |= bit;
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Counts the instances of every pair of reference and predicted codes.
+     * @return long[4][4] counts indexed by the reference and the predicted code
+     */
+    public long[][] pairCounts() {
+        long[][] counts = new long[4][4];
+        int words = refLo.length;
+        if (refHi == null) {
+            long both = 0, refOnly = 0, predOnly = 0;
+            for (int w = 0; w < words; w++) {
+                long r = refLo[w];
+                long p = predLo[w];
+                long diff = r ^ p;
+                both += Long.bitCount(r & p);
+                refOnly += Long.bitCount(diff & r);
+                predOnly += Long.bitCount(diff & p);
+            }
+            counts[1][1] = both;
+            counts[1][0] = refOnly;
+            counts[0][1] = predOnly;
+            counts[0][0] = size - both - refOnly - predOnly;
+            return counts;
+        }
+        long[] rm = new long[4];
+        long[] pm = new long[4];
+        for (int w = 0; w < words; w++) {
+            long valid = w == words - 1 && (size & 63) != 0 ? (1L << size) - 1 : -1L;
+            split(refLo[w], refHi[w], valid, rm);
+            split(predLo[w], predHi[w], valid, pm);
+            for (int a = 0; a < 4; a++) {
+                if (rm[a] == 0) {
+                    continue;
+                }
+                for (int p = 0; p < 4; p++) {
+                    counts[a][p] += Long.bitCount(rm[a] & pm[p]);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Splits a word of two planes into one mask per code.
+     */
+    private static void split(long lo, long hi, long valid, long[] masks) {
+        masks[0] = ~lo & ~hi & valid;
+        masks[1] = lo & ~hi;
+        masks[2] = ~lo & hi;
+        masks[3] = lo & hi;
+    }
+
+    /**
+     * @return the number of classes, i.e. distinct reference labels
+     */
+    public int classCount() {
+        return classCount;
+    }
+
+    /**
+     * @param code code of a class or of 'o'
+     * @return the label of the code
+     */
+    public char label(int code) {
+        return labels[code];
+    }
+
+    /**
+     * @return the number of instances
+     */
+    public int size() {
+        return size;
+    }
+}
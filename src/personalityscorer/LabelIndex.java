@@ -0,0 +1,85 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.util.Arrays;
+
+/**
+ * Gives the labels of a trait dense indexes 0, 1, 2, ... in the order they are interned. The index of a label is
+ * read from a table indexed by the label itself, so a lookup is a single array access: ASCII labels use a table of
+ * 128 entries, and a table covering all 65536 chars is only allocated when another label is seen.
+ * @author Firoj Alam
+ */
+public class LabelIndex {
+
+    private static final int ASCII = 128;
+
+    // the tables hold the index plus one, so that a new table means no label
+    private final int[] ascii = new int[ASCII];
+    private int[] wide;
+    private char[] labels = new char[4];
+    private int size;
+
+    /**
+     * Default constructor
+     */
+    public LabelIndex() {
+    }
+
+    /**
+     * @param label a label
+     * @return the index of the label, -1 if it was not interned
+     */
+    public int indexOf(char label) {
+        if (label < ASCII) {
+            return ascii[label] - 1;
+        }
+        return wide == null ? -1 : wide[label] - 1;
+    }
+
+    /**
+     * Returns the index of a label, the label gets the next index when it is seen for the first time.
+     * @param label a label
+     * @return the index of the label
+     */
+    public int intern(char label) {
+        int i = indexOf(label);
+        if (i >= 0) {
+            return i;
+        }
+        if (size == labels.length) {
+            labels = Arrays.copyOf(labels, size * 2);
+        }
+        labels[size] = label;
+        if (label < ASCII) {
+            ascii[label] = size + 1;
+        } else {
+            if (wide == null) {
+                wide = new int[Character.MAX_VALUE + 1];
+            }
+            wide[label] = size + 1;
+        }
+        return size++;
+    }
+
+    /**
+     * @return the number of labels interned
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i index of the label
+     * @return the label
+     */
+    public char label(int i) {
+        return labels[i];
+    }
+}
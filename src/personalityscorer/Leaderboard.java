@@ -0,0 +1,377 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Scores many label files, e.g., the submissions of a shared task, in one run and ranks them in one table. The
+ * files are scored concurrently by a fixed number of threads. With a reference file of ids and labels, the
+ * reference file is read once and the predictions of every file are joined with it by instance id; otherwise every
+ * file holds its own reference labels. Only the average of each measure over the traits is kept for a file, so the
+ * memory used grows with the number of threads rather than with the number of files.
+ * @author Firoj Alam
+ */
+public class Leaderboard {
+
+    private final boolean numeric;
+    private final boolean ua;
+    private final boolean f1;
+    private final boolean joint;
+    private final boolean errors;
+    private final int threads;
+    private final PersonalityScorerUA uaScorer = new PersonalityScorerUA();
+    private final PersonalityScorerF1 f1Scorer = new PersonalityScorerF1();
+    private final PersonalityNumericScorer numericScorer = new PersonalityNumericScorer();
+
+    /**
+     * @param numeric whether the files hold numeric values, ranked by the root mean square error
+     * @param ua whether to rank by the un-weighted average
+     * @param f1 whether to rank by the f-measure, after the un-weighted average if both are asked
+     * @param joint whether to add the subset accuracy and the hamming loss
+     * @param errors whether to add the mean absolute error, R squared, Pearson correlation and bias to the RMSE
+     * @param threads number of files scored at a time
+     */
+    public Leaderboard(boolean numeric, boolean ua, boolean f1, boolean joint, boolean errors, int threads) {
+        this.numeric = numeric;
+        this.ua = ua;
+        this.f1 = f1;
+        this.joint = joint;
+        this.errors = errors;
+        this.threads = threads;
+    }
+
+    /**
+     * Lists the files to score. A directory gives its files, except hidden files and indexes of reference files;
+     * a pattern with *, ?, [ or { gives the files whose path matches it as a glob, e.g., runs/*.txt or
+     * runs/**.gz; any other name is taken as a file.
+     * @param names directories, glob patterns or files
+     * @return the files, in the order of the names and each directory or pattern sorted by path
+     * @throws IOException if a directory can not be listed
+     */
+    public static ArrayList<String> listFiles(String[] names) throws IOException {
+        ArrayList<String> files = new ArrayList<String>();
+        for (int i = 0; i < names.length; i++) {
+            final ArrayList<String> found = new ArrayList<String>();
+            File file = new File(names[i]);
+            if (file.isDirectory()) {
+                File[] children = file.listFiles();
+                if (children == null) {
+                    throw new IOException(names[i] + " can not be listed.");
+                }
+                for (int k = 0; k < children.length; k++) {
+                    if (children[k].isFile() && isScored(children[k].getName())) {
+                        found.add(children[k].getPath());
+                    }
+                }
+            } else if (isGlob(names[i])) {
+                String pattern = names[i];
+                int wild = firstWildcard(pattern);
+                int slash = pattern.lastIndexOf(File.separatorChar, wild);
+                Path base = Paths.get(slash < 0 ? "." : slash == 0 ? File.separator : pattern.substring(0, slash));
+                final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                int depth = pattern.contains("**") ? Integer.MAX_VALUE : separators(pattern.substring(slash + 1)) + 1;
+                final boolean relative = slash < 0;
+                Files.walkFileTree(base, EnumSet.noneOf(FileVisitOption.class), depth,
+                        new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                        Path name = relative ? path.normalize() : path;
+                        if (attrs.isRegularFile() && matcher.matches(name)
+                                && isScored(path.getFileName().toString())) {
+                            found.add(name.toString());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path path, IOException ex) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } else {
+                files.add(names[i]);
+                continue;
+            }
+            Collections.sort(found);
+            files.addAll(found);
+        }
+        return files;
+    }
+
+    private static boolean isScored(String name) {
+        return !name.startsWith(".") && !name.endsWith(GoldIndex.SUFFIX);
+    }
+
+    private static boolean isGlob(String name) {
+        return firstWildcard(name) < name.length();
+    }
+
+    private static int firstWildcard(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return name.length();
+    }
+
+    private static int separators(String name) {
+        int n = 0;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) == File.separatorChar) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the names of the measures of a file, the first one ranks the files
+     */
+    public ArrayList<String> measureNames() {
+        ArrayList<String> names = new ArrayList<String>();
+        if (numeric) {
+            names.add("RMSE");
+            if (errors) {
+                names.add("MAE");
+                names.add("R2");
+                names.add("Pearson");
+                names.add("Bias");
+            }
+            return names;
+        }
+        if (ua) {
+            names.add("UA");
+        }
+        if (f1) {
+            names.add("F1");
+        }
+        if (joint) {
+            names.add("SubsetAcc");
+            names.add("HammingLoss");
+        }
+        return names;
+    }
+
+    /**
+     * Scores the files, at most the given number of threads at a time. The lines with wrong labels and the ids
+     * which could not be joined are reported to the standard error, file by file.
+     * @param files label files, or files of ids and predicted labels when a reference file is given
+     * @param gold join which has read the reference file, null if the files hold their own reference labels
+     * @return an entry of each file, in the order of the files
+     * @throws IOException if the scoring is interrupted
+     */
+    public ArrayList<Entry> score(ArrayList<String> files, final IdJoin gold) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+        try {
+            ArrayList<Future<Entry>> futures = new ArrayList<Future<Entry>>();
+            for (int i = 0; i < files.size(); i++) {
+                final String file = files.get(i);
+                futures.add(pool.submit(new Callable<Entry>() {
+                    @Override
+                    public Entry call() {
+                        return scoreFile(file, gold);
+                    }
+                }));
+            }
+            ArrayList<Entry> entries = new ArrayList<Entry>();
+            for (int i = 0; i < futures.size(); i++) {
+                entries.add(futures.get(i).get());
+            }
+            return entries;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scoring the files.", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Entry scoreFile(String file, IdJoin gold) {
+        Entry entry = new Entry(file);
+        try {
+            InstanceColumns data;
+            if (gold != null) {
+                IdJoin join = new IdJoin(gold);
+                join.readPredictions(file);
+                String problems = join.problems();
+                if (!problems.isEmpty()) {
+                    System.err.print("\n" + file + ":" + problems);
+                }
+                data = join.columns();
+            } else if (BinaryLabelFile.isBinary(file)) {
+                data = BinaryLabelFile.readColumns(file, numeric);
+            } else {
+                data = numeric ? InstanceColumns.readNumeric(file) : InstanceColumns.readLabels(file);
+            }
+            if (data.size() == 0) {
+                entry.failure = "no instances";
+                return entry;
+            }
+            entry.instances = data.size();
+            entry.measures = numeric ? numericMeasures(data) : labelMeasures(data);
+        } catch (IOException ex) {
+            entry.failure = ex.getMessage() == null ? ex.toString() : ex.getMessage();
+        } catch (RuntimeException ex) {
+            entry.failure = "please check the format of the file (" + ex + ")";
+        }
+        return entry;
+    }
+
+    private double[] labelMeasures(InstanceColumns data) {
+        double[] measures = new double[measureNames().size()];
+        int m = 0;
+        if (ua) {
+            measures[m++] = uaScorer.score(data).average(0);
+        }
+        if (f1) {
+            measures[m++] = f1Scorer.score(data).average(2);
+        }
+        if (joint) {
+            PatternCube cube = PatternCube.fromColumns(data);
+            measures[m++] = cube == null ? Double.NaN : cube.subsetAccuracy();
+            measures[m++] = cube == null ? Double.NaN : cube.hammingLoss();
+        }
+        return measures;
+    }
+
+    private double[] numericMeasures(InstanceColumns data) {
+        TraitScores scores = numericScorer.scoreAll(data);
+        double[] measures = new double[measureNames().size()];
+        for (int m = 0; m < measures.length; m++) {
+            measures[m] = scores.average(m);
+        }
+        return measures;
+    }
+
+    /**
+     * Ranks the scored files by their first measure, the best first: the highest un-weighted average, f-measure
+     * or subset accuracy, or the lowest root mean square error. Files with the same score have the same rank, and
+     * files which could not be scored come last, without a rank.
+     * @param entries the scored files, sorted in place
+     */
+    public void rank(ArrayList<Entry> entries) {
+        final int sign = numeric ? 1 : -1;
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                if ((a.measures == null) != (b.measures == null)) {
+                    return a.measures == null ? 1 : -1;
+                }
+                if (a.measures != null) {
+                    boolean nanA = Double.isNaN(a.measures[0]), nanB = Double.isNaN(b.measures[0]);
+                    if (nanA != nanB) {
+                        return nanA ? 1 : -1;
+                    }
+                    int c = sign * Double.compare(a.measures[0], b.measures[0]);
+                    if (c != 0) {
+                        return c;
+                    }
+                }
+                return a.file.compareTo(b.file);
+            }
+        });
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.measures == null) {
+                continue;
+            }
+            Entry previous = i > 0 ? entries.get(i - 1) : null;
+            entry.rank = previous != null && Double.compare(previous.measures[0], entry.measures[0]) == 0
+                    ? previous.rank : i + 1;
+        }
+    }
+
+    /**
+     * Prints the ranked files to the standard output, as a tab separated table with two decimals or as CSV with
+     * all the digits of the measures.
+     * @param entries the ranked files
+     * @param csv whether to print CSV
+     */
+    public void print(ArrayList<Entry> entries, boolean csv) {
+        ArrayList<String> names = measureNames();
+        DecimalFormat twoDForm = new DecimalFormat("#.##");
+        String separator = csv ? "," : "\t";
+        StringBuilder str = new StringBuilder(csv ? "Rank,File,Instances" : "Rank\tFile\tInstances");
+        for (int m = 0; m < names.size(); m++) {
+            str.append(separator).append(names.get(m));
+        }
+        System.out.println(str);
+        ArrayList<Entry> failed = new ArrayList<Entry>();
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.measures == null) {
+                failed.add(entry);
+                continue;
+            }
+            str = new StringBuilder();
+            str.append(entry.rank).append(separator).append(csv ? csvField(entry.file) : entry.file)
+                    .append(separator).append(entry.instances);
+            for (int m = 0; m < entry.measures.length; m++) {
+                double value = entry.measures[m];
+                str.append(separator).append(csv ? String.valueOf(value) : twoDForm.format(value));
+            }
+            System.out.println(str);
+        }
+        for (int i = 0; i < failed.size(); i++) {
+            Entry entry = failed.get(i);
+            if (csv) {
+                System.out.println("," + csvField(entry.file) + ",0");
+            }
+            System.err.println("\n" + entry.file + " could not be scored: " + entry.failure);
+        }
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * The scores of one file of the leaderboard.
+     */
+    static class Entry {
+
+        private final String file;
+        private int rank;
+        private int instances;
+        private double[] measures;
+        private String failure;
+
+        Entry(String file) {
+            this.file = file;
+        }
+    }
+}
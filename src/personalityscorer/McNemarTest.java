@@ -0,0 +1,135 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+/**
+ * McNemar's test of two systems which labeled the same instances. The correctness of each system is a bitset with
+ * one bit per instance, set when the predicted label is the reference label; the discordant instances, right for
+ * one system only, are counted with popcounts of one system's bits without the other's, 64 instances at a time.
+ * With fewer than {@link #EXACT_BELOW} discordant instances the exact binomial test is used, otherwise the
+ * chi-squared statistic with continuity correction.
+ * @author Firoj Alam
+ */
+public class McNemarTest {
+
+    public static final int EXACT_BELOW = 25;
+
+    private final long onlyA;
+    private final long onlyB;
+
+    /**
+     * Counts the discordant instances of two correctness bitsets of the same instances.
+     * @param a correctness of the first system
+     * @param b correctness of the second system
+     */
+    public McNemarTest(long[] a, long[] b) {
+        long ab = 0, ba = 0;
+        for (int w = 0; w < a.length; w++) {
+            ab += Long.bitCount(a[w] & ~b[w]);
+            ba += Long.bitCount(b[w] & ~a[w]);
+        }
+        this.onlyA = ab;
+        this.onlyB = ba;
+    }
+
+    /**
+     * Encodes the correctness of the predictions of one trait as a bitset.
+     * @param ref reference labels
+     * @param pred predicted labels
+     * @param size number of instances
+     * @return the bitset, bit i of word i / 64 is set when instance i is predicted correctly
+     */
+    public static long[] correct(byte[] ref, byte[] pred, int size) {
+        long[] bits = new long[(size + 63) >>> 6];
+        for (int i = 0; i < size; i++) {
+            if (ref[i] == pred[i]) {
+                bits[i >>> 6] |= 1L << i;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @param bits a bitset
+     * @return the number of set bits
+     */
+    public static long count(long[] bits) {
+        long n = 0;
+        for (int w = 0; w < bits.length; w++) {
+            n += Long.bitCount(bits[w]);
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of instances only the first system predicted correctly
+     */
+    public long getOnlyA() {
+        return onlyA;
+    }
+
+    /**
+     * @return the number of instances only the second system predicted correctly
+     */
+    public long getOnlyB() {
+        return onlyB;
+    }
+
+    /**
+     * @return whether the exact binomial test is used
+     */
+    public boolean isExact() {
+        return onlyA + onlyB < EXACT_BELOW;
+    }
+
+    /**
+     * @return the chi-squared statistic with continuity correction, 0 without discordant instances
+     */
+    public double chiSquared() {
+        long n = onlyA + onlyB;
+        if (n == 0) {
+            return 0.0;
+        }
+        double d = Math.max(0, Math.abs(onlyA - onlyB) - 1);
+        return d * d / n;
+    }
+
+    /**
+     * @return the two-sided p-value
+     */
+    public double pValue() {
+        long n = onlyA + onlyB;
+        if (n == 0) {
+            return 1.0;
+        }
+        if (isExact()) {
+            long k = Math.min(onlyA, onlyB);
+            double term = Math.pow(0.5, n);
+            double tail = 0.0;
+            for (long i = 0; i <= k; i++) {
+                tail += term;
+                term = term * (n - i) / (i + 1);
+            }
+            return Math.min(1.0, 2 * tail);
+        }
+        return erfc(Math.sqrt(chiSquared() / 2));
+    }
+
+    /**
+     * Complementary error function, with a fractional error below 1.2e-7 (Numerical Recipes, erfcc).
+     */
+    static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1.0 / (1.0 + 0.5 * z);
+        double ans = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+                + t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? ans : 2.0 - ans;
+    }
+}
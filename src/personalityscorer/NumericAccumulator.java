@@ -0,0 +1,147 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Updates the per-trait error sums with every line of the numeric label file and then drops the line, so the
+ * memory used does not depend on the size of the input file. The number of traits is taken from the first instance.
+ * @author Firoj Alam
+ */
+public class NumericAccumulator extends Accumulator<NumericAccumulator> {
+
+    private ErrorMoments[] moments;
+    private double[] ref;
+    private double[] pred;
+    private final StringBuilder value = new StringBuilder();
+
+    /**
+     * Default constructor
+     */
+    public NumericAccumulator() {
+    }
+
+    /**
+     * @param traits number of traits of the instances
+     */
+    public NumericAccumulator(int traits) {
+        init(traits);
+    }
+
+    private void init(int traits) {
+        this.traits = traits;
+        moments = new ErrorMoments[traits];
+        for (int col = 0; col < traits; col++) {
+            moments[col] = new ErrorMoments();
+        }
+        ref = new double[traits];
+        pred = new double[traits];
+    }
+
+    @Override
+    public void row(ByteBuffer buf, int[] start, int[] end, int line) {
+        countLine();
+        int refLen = InstanceReader.countValues(buf, start[InstanceReader.REF_LABELS], end[InstanceReader.REF_LABELS]);
+        int predLen = InstanceReader.countValues(buf, start[InstanceReader.PRED_LABELS], end[InstanceReader.PRED_LABELS]);
+        if (!InstanceReader.sameColumn(buf, start[InstanceReader.REF_ID], end[InstanceReader.REF_ID],
+                start[InstanceReader.PRED_ID], end[InstanceReader.PRED_ID]) && refLen != predLen) {
+            badLine();
+            return;
+        }
+        if (traits < 0) {
+            init(refLen);
+        }
+        if (refLen != traits || predLen != traits) {
+            badLine();
+            return;
+        }
+        try {
+            InstanceReader.parseValues(buf, start[InstanceReader.REF_LABELS], end[InstanceReader.REF_LABELS], ref, value);
+            InstanceReader.parseValues(buf, start[InstanceReader.PRED_LABELS], end[InstanceReader.PRED_LABELS], pred, value);
+        } catch (NumberFormatException ex) {
+            badLine();
+            return;
+        }
+        for (int col = 0; col < moments.length; col++) {
+            moments[col].add(ref[col], pred[col]);
+        }
+    }
+
+    /**
+     * Adds one instance of values which are already parsed, e.g., read from a binary label file.
+     * @param ref reference values of each trait
+     * @param pred predicted values of each trait
+     */
+    public void addValues(double[] ref, double[] pred) {
+        countLine();
+        if (traits < 0) {
+            init(ref.length);
+        }
+        if (ref.length != traits || pred.length != traits) {
+            badLine();
+            return;
+        }
+        for (int col = 0; col < moments.length; col++) {
+            moments[col].add(ref[col], pred[col]);
+        }
+    }
+
+    @Override
+    public NumericAccumulator emptyCopy() {
+        NumericAccumulator part = new NumericAccumulator(traits);
+        part.setDeferErrors(true);
+        return part;
+    }
+
+    @Override
+    public void merge(NumericAccumulator other) {
+        mergeLines(other);
+        if (other.traits < 0) {
+            return;
+        }
+        if (traits < 0) {
+            init(other.traits);
+        }
+        for (int col = 0; col < traits; col++) {
+            moments[col].merge(other.moments[col]);
+        }
+    }
+
+    @Override
+    protected int kind() {
+        return 'N';
+    }
+
+    @Override
+    protected void writeState(DataOutput out) throws IOException {
+        for (int col = 0; col < traits; col++) {
+            moments[col].write(out);
+        }
+    }
+
+    @Override
+    protected NumericAccumulator readState(int traits, DataInput in) throws IOException {
+        NumericAccumulator part = new NumericAccumulator(traits);
+        for (int col = 0; col < traits; col++) {
+            part.moments[col] = ErrorMoments.read(in);
+        }
+        return part;
+    }
+
+    /**
+     * @return the error sums of each trait, null if no instance was read
+     */
+    public ErrorMoments[] getMoments() {
+        return moments;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads a label file in parallel. The file is split into byte ranges which end at a line break, every range is
+ * parsed into its own accumulator on a fork/join worker and the accumulators are merged in the order of the ranges.
+ * Counts are integers and the error sums are exact, so the result is the same, bit for bit, as the result of a
+ * sequential pass, whatever the number of threads.
+ * @author Firoj Alam
+ */
+public class ParallelReader {
+
+    private static final int MIN_CHUNK = 1 << 20;
+    private static final int MAX_CHUNK = 32 << 20;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param threads number of worker threads
+     */
+    public ParallelReader(int threads) {
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * @param pool pool running the parsing tasks
+     */
+    public ParallelReader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Reads the label file into the accumulator. The first range is read by the given accumulator itself, which
+     * fixes the number of traits; the other ranges are read into empty copies of it. A compressed file, the standard
+     * input or a pipe can not be split into ranges, they are read by a single reader.
+     * @param fileName input file
+     * @param acc empty accumulator receiving the whole file
+     * @return the accumulator
+     * @throws IOException if the file can not be read or a line does not have the expected columns
+     */
+    public <T extends Accumulator<T>> T read(String fileName, T acc) throws IOException {
+        if (InstanceReader.isStream(fileName) || InstanceReader.isCompressed(fileName)) {
+            new InstanceReader().read(fileName, acc);
+            return acc;
+        }
+        FileInputStream in = new FileInputStream(fileName);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            long chunk = Math.min(MAX_CHUNK, Math.max(MIN_CHUNK, size / (pool.getParallelism() * 4L)));
+            long[] bounds = split(channel, size, chunk);
+            int first = 1;
+            readRange(channel, bounds[0], bounds[1], acc);
+            while (acc.traits() < 0 && first < bounds.length - 1) {
+                readRange(channel, bounds[first], bounds[first + 1], acc);
+                first++;
+            }
+            if (first < bounds.length - 1) {
+                T rest = pool.invoke(new RangeTask<T>(channel, bounds, first, bounds.length - 1, acc));
+                acc.merge(rest);
+                acc.reportErrors();
+            }
+            return acc;
+        } catch (RuntimeException ex) {
+            Throwable cause = ex.getCause();
+            while (cause != null && !(cause instanceof IOException)) {
+                cause = cause.getCause();
+            }
+            if (cause != null) {
+                throw (IOException) cause;
+            }
+            throw ex;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Splits the file into ranges of about the chunk size, each range ending after a line break.
+     * @return the offsets of the ranges, range i goes from bounds[i] to bounds[i + 1]
+     */
+    private static long[] split(FileChannel channel, long size, long chunk) throws IOException {
+        ArrayList<Long> bounds = new ArrayList<Long>();
+        bounds.add(0L);
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        long pos = chunk;
+        while (pos < size) {
+            long eol = -1;
+            long scan = pos;
+            while (eol < 0 && scan < size) {
+                buf.clear();
+                int n = channel.read(buf, scan);
+                for (int i = 0; i < n; i++) {
+                    if (buf.get(i) == '\n') {
+                        eol = scan + i;
+                        break;
+                    }
+                }
+                scan += n;
+            }
+            if (eol < 0 || eol + 1 >= size) {
+                break;
+            }
+            bounds.add(eol + 1);
+            pos = eol + 1 + chunk;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static void readRange(FileChannel channel, long from, long to, InstanceReader.RowHandler handler) throws IOException {
+        if (to <= from) {
+            return;
+        }
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        InstanceReader reader = new InstanceReader();
+        try {
+            reader.scan(buf, 0, (int) (to - from), true, handler);
+        } catch (IOException ex) {
+            throw new IOException("In the part of the file starting at byte " + from + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Parses a run of ranges, splitting it in halves which are parsed in parallel and merged in order.
+     */
+    private static class RangeTask<T extends Accumulator<T>> extends RecursiveTask<T> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final int from;
+        private final int to;
+        private final T template;
+
+        RangeTask(FileChannel channel, long[] bounds, int from, int to, T template) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.template = template;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from == 1) {
+                T acc = template.emptyCopy();
+                try {
+                    readRange(channel, bounds[from], bounds[to], acc);
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+                return acc;
+            }
+            int mid = (from + to) >>> 1;
+            RangeTask<T> left = new RangeTask<T>(channel, bounds, from, mid, template);
+            RangeTask<T> right = new RangeTask<T>(channel, bounds, mid, to, template);
+            left.fork();
+            T rightAcc = right.compute();
+            T leftAcc = left.join();
+            leftAcc.merge(rightAcc);
+            return leftAcc;
+        }
+    }
+}
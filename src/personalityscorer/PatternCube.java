@@ -0,0 +1,267 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Joint histogram of the reference and predicted label patterns of binary traits. With y/n labels every instance
+ * is one reference pattern and one predicted pattern, bit t of a pattern being set when trait t is 'y'; for five
+ * traits that is a 32x32 matrix of counts. The per-trait label counts, the subset accuracy and the Hamming loss
+ * are all derived from the matrix, so the instances are scanned only once.
+ * @author Firoj Alam
+ */
+public class PatternCube {
+
+    /**
+     * Largest number of traits a cube can hold, the matrix then has 65536 cells.
+     */
+    public static final int MAX_TRAITS = 8;
+    public static final char POSITIVE = 'y';
+    public static final char NEGATIVE = 'n';
+
+    private final int traits;
+    private final long[] cells;
+
+    /**
+     * @param traits number of traits, at most {@link #MAX_TRAITS}
+     */
+    public PatternCube(int traits) {
+        if (traits > MAX_TRAITS) {
+            throw new IllegalArgumentException("A pattern cube holds at most " + MAX_TRAITS + " traits.");
+        }
+        this.traits = traits;
+        this.cells = new long[1 << (2 * traits)];
+    }
+
+    /**
+     * Builds the cube of the label columns in one pass.
+     * @param data reference and predicted label columns
+     * @return the cube, or null if there are too many traits or a label is not y/n
+     */
+    public static PatternCube fromColumns(InstanceColumns data) {
+        int traits = data.traits();
+        if (traits > MAX_TRAITS) {
+            return null;
+        }
+        PatternCube cube = new PatternCube(traits);
+        int[] refPatterns = new int[data.size()];
+        int[] predPatterns = new int[data.size()];
+        for (int col = 0; col < traits; col++) {
+            byte[] refCol = data.refLabels(col);
+            byte[] predCol = data.predLabels(col);
+            for (int row = 0; row < data.size(); row++) {
+                int r = bit(refCol[row]);
+                int p = bit(predCol[row]);
+                if (r < 0 || p < 0) {
+                    return null;
+                }
+                refPatterns[row] |= r << col;
+                predPatterns[row] |= p << col;
+            }
+        }
+        for (int row = 0; row < data.size(); row++) {
+            cube.cells[(refPatterns[row] << traits) | predPatterns[row]]++;
+        }
+        return cube;
+    }
+
+    /**
+     * @return 1 for 'y', 0 for 'n' and -1 for any other label
+     */
+    public static int bit(int label) {
+        if (label == POSITIVE) {
+            return 1;
+        }
+        return label == NEGATIVE ? 0 : -1;
+    }
+
+    /**
+     * Counts one instance.
+     * @param refPattern reference pattern
+     * @param predPattern predicted pattern
+     */
+    public void add(int refPattern, int predPattern) {
+        cells[(refPattern << traits) | predPattern]++;
+    }
+
+    /**
+     * Counts the same pair of patterns several times.
+     * @param refPattern reference pattern
+     * @param predPattern predicted pattern
+     * @param n number of instances
+     */
+    public void add(int refPattern, int predPattern, long n) {
+        cells[(refPattern << traits) | predPattern] += n;
+    }
+
+    /**
+     * Adds the counts of another cube with the same number of traits.
+     * @param other the other cube
+     */
+    public void merge(PatternCube other) {
+        if (other.traits != traits) {
+            throw new IllegalArgumentException("Can not merge cubes of " + traits + " and " + other.traits + " traits.");
+        }
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] += other.cells[i];
+        }
+    }
+
+    /**
+     * Writes the cube in binary form. Only the cells which are not empty are written, as pairs of cell index
+     * and count; most pairs of patterns never occur.
+     * @param out output
+     * @throws IOException if the cube can not be written
+     */
+    public void write(DataOutput out) throws IOException {
+        int filled = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != 0) {
+                filled++;
+            }
+        }
+        out.writeByte(traits);
+        out.writeInt(filled);
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != 0) {
+                out.writeShort(i);
+                out.writeLong(cells[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads a cube written by {@link #write(DataOutput)}.
+     * @param in input
+     * @return the cube
+     * @throws IOException if the cube can not be read
+     */
+    public static PatternCube read(DataInput in) throws IOException {
+        int traits = in.readUnsignedByte();
+        if (traits > MAX_TRAITS) {
+            throw new IOException("Wrong number of traits in the pattern cube: " + traits);
+        }
+        PatternCube cube = new PatternCube(traits);
+        int filled = in.readInt();
+        for (int k = 0; k < filled; k++) {
+            int i = in.readUnsignedShort();
+            if (i >= cube.cells.length) {
+                throw new IOException("Wrong cell in the pattern cube: " + i);
+            }
+            cube.cells[i] += in.readLong();
+        }
+        return cube;
+    }
+
+    /**
+     * @param refPattern reference pattern
+     * @param predPattern predicted pattern
+     * @return the number of instances with this pair of patterns
+     */
+    public long count(int refPattern, int predPattern) {
+        return cells[(refPattern << traits) | predPattern];
+    }
+
+    /**
+     * @return the number of traits
+     */
+    public int traits() {
+        return traits;
+    }
+
+    /**
+     * @return the number of instances
+     */
+    public long size() {
+        long n = 0;
+        for (int i = 0; i < cells.length; i++) {
+            n += cells[i];
+        }
+        return n;
+    }
+
+    /**
+     * Derives the label counts of one trait by summing the cells over the other traits.
+     * @param trait index of the trait
+     * @return the label counts of the trait
+     */
+    public ConfusionCounts traitCounts(int trait) {
+        return traitCounts(trait, true);
+    }
+
+    /**
+     * Derives the label counts of one trait by summing the cells over the other traits.
+     * @param trait index of the trait
+     * @param negativeFirst whether the reference label 'n' was seen before 'y', which gives the order of the classes
+     * @return the label counts of the trait
+     */
+    public ConfusionCounts traitCounts(int trait, boolean negativeFirst) {
+        long[][] pairs = new long[2][2];
+        int mask = (1 << traits) - 1;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != 0) {
+                int r = ((i >>> traits) & mask) >>> trait & 1;
+                int p = (i & mask) >>> trait & 1;
+                pairs[r][p] += cells[i];
+            }
+        }
+        char[] labels = {NEGATIVE, POSITIVE};
+        ConfusionCounts counts = new ConfusionCounts();
+        for (int k = 0; k < 2; k++) {
+            int r = negativeFirst ? k : 1 - k;
+            for (int p = 0; p < 2; p++) {
+                if (pairs[r][p] != 0) {
+                    counts.add(labels[r], labels[p], pairs[r][p]);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the label counts of every trait
+     */
+    public ConfusionCounts[] traitCounts() {
+        ConfusionCounts[] counts = new ConfusionCounts[traits];
+        for (int col = 0; col < traits; col++) {
+            counts[col] = traitCounts(col);
+        }
+        return counts;
+    }
+
+    /**
+     * Calculate the subset accuracy, the ratio of instances whose predicted labels are all correct.
+     * @return the subset accuracy
+     */
+    public double subsetAccuracy() {
+        long correct = 0;
+        for (int pattern = 0; pattern < (1 << traits); pattern++) {
+            correct += count(pattern, pattern);
+        }
+        return (double) correct / size();
+    }
+
+    /**
+     * Calculate the Hamming loss, the ratio of wrongly predicted labels over all traits.
+     * @return the Hamming loss
+     */
+    public double hammingLoss() {
+        long wrong = 0;
+        int mask = (1 << traits) - 1;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != 0) {
+                wrong += cells[i] * Integer.bitCount(((i >>> traits) ^ i) & mask);
+            }
+        }
+        return (double) wrong / ((double) size() * traits);
+    }
+}
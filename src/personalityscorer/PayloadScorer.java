@@ -0,0 +1,214 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * Scores the predictions sent to a running scorer, by {@link ScoreServer} and {@link CoProcess}, and writes the
+ * measures as JSON: the number of instances, the measures of each trait and their average, and the lines and ids
+ * which could not be scored. Without a reference file the predictions are the lines of a label file; with a
+ * reference file read once, they are lines of ids and predicted labels joined with it. A scorer keeps no state
+ * between calls, so it can score on several threads at once.
+ * @author Firoj Alam
+ */
+public class PayloadScorer {
+
+    private static final String[] TRAITS = {"Extra", "Neuro", "Agree", "Cons", "Open"};
+
+    private final boolean numeric;
+    private final IdJoin gold;
+    private final PersonalityScorerUA uaScorer = new PersonalityScorerUA();
+    private final PersonalityScorerF1 f1Scorer = new PersonalityScorerF1();
+    private final PersonalityNumericScorer numericScorer = new PersonalityNumericScorer();
+
+    /**
+     * @param numeric whether the predictions hold numeric values
+     * @param gold join which has read the reference file, null if the predictions are whole label files
+     */
+    public PayloadScorer(boolean numeric, IdJoin gold) {
+        this.numeric = numeric;
+        this.gold = gold;
+    }
+
+    /**
+     * Scores the lines of a label file, or with a reference file the lines of ids and predicted labels.
+     * @param in the lines, not closed
+     * @return the measures as a JSON object, null if no instance could be scored
+     * @throws IOException if the lines can not be read or do not have the expected columns
+     */
+    public String score(InputStream in) throws IOException {
+        return gold != null ? scoreJoined(in) : scoreLabelFile(in);
+    }
+
+    private String scoreLabelFile(InputStream in) throws IOException {
+        ArrayList<String> problems = new ArrayList<String>();
+        if (numeric) {
+            NumericAccumulator acc = new NumericAccumulator();
+            acc.setDeferErrors(true);
+            new InstanceReader().read(in, acc);
+            badLines(acc, problems);
+            return acc.getMoments() == null ? null : numericJson(acc.getMoments(), problems);
+        }
+        LabelAccumulator acc = new LabelAccumulator();
+        acc.setDeferErrors(true);
+        new InstanceReader().read(in, acc);
+        badLines(acc, problems);
+        if (acc.getInstances() == 0) {
+            return null;
+        }
+        return labelJson(acc.getCounts(), acc.getCube(), acc.getInstances(), problems);
+    }
+
+    private static void badLines(Accumulator<?> acc, ArrayList<String> problems) {
+        ArrayList<Integer> lines = acc.getBadLines();
+        for (int i = 0; i < lines.size(); i++) {
+            problems.add("Please check instance ids and labels in your input file at line " + lines.get(i));
+        }
+    }
+
+    private String scoreJoined(InputStream in) throws IOException {
+        IdJoin join = new IdJoin(gold);
+        join.readPredictions(in);
+        ArrayList<String> problems = new ArrayList<String>();
+        String[] lines = join.problems().split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            if (!lines[i].trim().isEmpty()) {
+                problems.add(lines[i].trim());
+            }
+        }
+        InstanceColumns data = join.columns();
+        if (data.size() == 0) {
+            return null;
+        }
+        int traits = data.traits();
+        if (numeric) {
+            ErrorMoments[] moments = new ErrorMoments[traits];
+            for (int col = 0; col < traits; col++) {
+                double[] ref = data.refValues(col);
+                double[] pred = data.predValues(col);
+                moments[col] = new ErrorMoments();
+                for (int row = 0; row < data.size(); row++) {
+                    moments[col].add(ref[row], pred[row]);
+                }
+            }
+            return numericJson(moments, problems);
+        }
+        ConfusionCounts[] counts = new ConfusionCounts[traits];
+        for (int col = 0; col < traits; col++) {
+            byte[] ref = data.refLabels(col);
+            byte[] pred = data.predLabels(col);
+            counts[col] = new ConfusionCounts();
+            for (int row = 0; row < data.size(); row++) {
+                counts[col].add((char) (ref[row] & 0xFF), (char) (pred[row] & 0xFF));
+            }
+        }
+        return labelJson(counts, PatternCube.fromColumns(data), data.size(), problems);
+    }
+
+    /**
+     * @return the un-weighted average, precision, recall and f-measure of each trait and their averages, and the
+     * subset accuracy and hamming loss when the labels are y/n
+     */
+    private String labelJson(ConfusionCounts[] counts, PatternCube cube, long instances, ArrayList<String> problems) {
+        TraitScores ua = uaScorer.score(counts);
+        TraitScores f1 = f1Scorer.score(counts);
+        String[] names = {"ua", "precision", "recall", "f1"};
+        StringBuilder json = new StringBuilder("{\"instances\":").append(instances).append(",\"traits\":[");
+        for (int col = 0; col < counts.length; col++) {
+            double[] measures = {ua.value(col, 0), f1.value(col, 0), f1.value(col, 1), f1.value(col, 2)};
+            json.append(col > 0 ? "," : "").append("{\"trait\":").append(string(trait(col)));
+            for (int m = 0; m < names.length; m++) {
+                json.append(",\"").append(names[m]).append("\":").append(number(measures[m]));
+            }
+            json.append('}');
+        }
+        double[] averages = {ua.average(0), f1.average(0), f1.average(1), f1.average(2)};
+        json.append("],\"average\":{");
+        for (int m = 0; m < names.length; m++) {
+            json.append(m > 0 ? "," : "").append('"').append(names[m]).append("\":").append(number(averages[m]));
+        }
+        json.append('}');
+        if (cube != null) {
+            json.append(",\"subsetAccuracy\":").append(number(cube.subsetAccuracy()))
+                    .append(",\"hammingLoss\":").append(number(cube.hammingLoss()));
+        }
+        return problems(json, problems);
+    }
+
+    /**
+     * @return the root mean square error, mean absolute error, R squared, Pearson correlation and bias of each
+     * trait and their averages
+     */
+    private String numericJson(ErrorMoments[] moments, ArrayList<String> problems) {
+        TraitScores scores = numericScorer.scoreAll(moments);
+        String[] names = {"rmse", "mae", "r2", "pearson", "bias"};
+        long instances = moments.length > 0 ? moments[0].count() : 0;
+        StringBuilder json = new StringBuilder("{\"instances\":").append(instances).append(",\"traits\":[");
+        for (int col = 0; col < scores.traits(); col++) {
+            json.append(col > 0 ? "," : "").append("{\"trait\":").append(string(trait(col)));
+            for (int m = 0; m < names.length; m++) {
+                json.append(",\"").append(names[m]).append("\":").append(number(scores.value(col, m)));
+            }
+            json.append('}');
+        }
+        json.append("],\"average\":{");
+        for (int m = 0; m < names.length; m++) {
+            json.append(m > 0 ? "," : "").append('"').append(names[m]).append("\":").append(number(scores.average(m)));
+        }
+        json.append('}');
+        return problems(json, problems);
+    }
+
+    private static String problems(StringBuilder json, ArrayList<String> problems) {
+        json.append(",\"problems\":[");
+        for (int i = 0; i < problems.size(); i++) {
+            json.append(i > 0 ? "," : "").append(string(problems.get(i)));
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String trait(int col) {
+        return col < TRAITS.length ? TRAITS[col] : "Trait" + (col + 1);
+    }
+
+    /**
+     * @return a JSON object holding an error message
+     */
+    static String error(String message) {
+        return "{\"error\":" + string(message) + "}";
+    }
+
+    /**
+     * @return the number as JSON, null when it is not a number
+     */
+    private static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.valueOf(value);
+    }
+
+    /**
+     * @return the text as a JSON string
+     */
+    private static String string(String text) {
+        StringBuilder str = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                str.append('\\').append(c);
+            } else if (c < 0x20) {
+                str.append(String.format("\\u%04x", (int) c));
+            } else {
+                str.append(c);
+            }
+        }
+        return str.append('"').toString();
+    }
+}
@@ -8,53 +8,36 @@
 
 package personalityscorer;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- *
+ * Calculates the root-mean square error of each trait, and the other numeric measures. A scorer keeps no state,
+ * the measures are returned as {@link TraitScores}, so one scorer can score any number of files, also on several
+ * threads at once.
  * @author Firoj Alam
  */
 public class PersonalityNumericScorer {
-    private ArrayList rmseList = new ArrayList();
+
+    private static final String[] RMSE = {"RMSE"};
+    private static final String[] ALL = {"RMSE", "MAE", "R2", "Pearson", "Bias"};
+
     public PersonalityNumericScorer() {
     }
     /**
      * Reads the instances from the input file, then reads the values from the lines of the file. Returns an multidimensional array containing the reference and predicted labels.
      * The format of the input file is the following. Contains reference file-id, reference labels followed 
      * by three tokens, then again predicted file-id, predicted labels followed by four tokens.
+     * The file is scanned through a memory-mapped buffer by {@link InstanceReader}.
      * @return the value of instanceList
      */
     public ArrayList readInstanceList(String fileName) {
         ArrayList instanceList = new ArrayList();
-
         try {
-            BufferedReader fileRead = new BufferedReader(new InputStreamReader(new FileInputStream(fileName)));
-            String str = "";
-            int i = 1;
-            while ((str = fileRead.readLine()) != null) {
-                String[] strArr = str.split("\\s+");
-                String refID = strArr[0];
-                String[] refLabArr = strArr[1].split("#");
-                String predID = strArr[5];
-                String[] predLabArr = strArr[6].split("#");
-                if (!refID.equals(predID) && refLabArr.length != predLabArr.length) {
-                    System.err.println("\nPlease check instance ids and labels in your input file at line " + i);
-                } else {
-                    String result[] = new String[refLabArr.length + predLabArr.length];
-                    System.arraycopy(refLabArr, 0, result, 0, refLabArr.length);
-                    System.arraycopy(predLabArr, 0, result, refLabArr.length, predLabArr.length);
-                    instanceList.add(result);
-                }
-                i = i + 1;
-            }//end read file
-            fileRead.close();
+            instanceList = new InstanceReader().readNumericList(fileName);
         } catch (FileNotFoundException ex) {
             System.out.println("Please check your input file. Check that whether it is exist or not.");
             Logger.getLogger(PersonalityNumericScorer.class.getName()).log(Level.SEVERE, null, ex);
@@ -70,28 +53,158 @@ public class PersonalityNumericScorer {
      */
     public void compute(ArrayList list){
         try {
-            String[] tmp = (String[]) list.get(0);
-            int length = tmp.length;
-            length = length / 2;
-            StringBuilder result = new StringBuilder();
+            TraitScores scores = score(list);
+            System.out.println("Class\tRMSE");
+            printRMSE(scores);
+        } catch (Exception ex) {
+            System.out.println("Please check the format of your input file.");
+        }
+    }
+
+    /**
+     * Compute the root-mean square error of every trait.
+     * @param list reference and predicted values of each instance
+     * @return the root-mean square error of each trait
+     */
+    public TraitScores score(ArrayList list) {
+        String[] tmp = (String[]) list.get(0);
+        int length = tmp.length;
+        length = length / 2;
+        double[][] values = new double[length][];
+        for (int col = 0; col < length; col++) {
+            int colPred = col + length;
+            values[col] = new double[]{computeRMSE(list, col, colPred)};
+        }
+        return new TraitScores(RMSE, values);
+    }
+
+    /**
+     * Compute the results from the error sums of a streaming pass and print to the standard output.
+     * @param moments error sums of each trait
+     */
+    public void compute(ErrorMoments[] moments){
+        try {
+            System.out.println("Class\tRMSE");
+            printRMSE(score(moments));
+        } catch (Exception ex) {
+            System.out.println("Please check the format of your input file.");
+        }
+    }
+
+    /**
+     * Compute the root-mean square error of every trait from the error sums of a streaming pass.
+     * @param moments error sums of each trait
+     * @return the root-mean square error of each trait
+     */
+    public TraitScores score(ErrorMoments[] moments) {
+        double[][] values = new double[moments.length][];
+        for (int col = 0; col < moments.length; col++) {
+            values[col] = new double[]{moments[col].rmse()};
+        }
+        return new TraitScores(RMSE, values);
+    }
+
+    private void printRMSE(TraitScores scores) {
+        String[] arr = {"Extra", "Neuro", "Agree", "Cons", "Open"};
+        DecimalFormat twoDForm = new DecimalFormat("#.##");
+        for (int col = 0; col < scores.traits(); col++) {
+            System.out.println(arr[col] + "\t" + twoDForm.format(scores.value(col, 0)));
+        }
+        System.out.println("Avg\t" + twoDForm.format(scores.average(0)) + "\t");
+    }
+
+    /**
+     * Compute the results from the numeric columns and print to the standard output.
+     * @param data reference and predicted value columns
+     */
+    public void compute(InstanceColumns data){
+        if (data.size() == 0) {
+            System.out.println("Please check the format of your input file.");
+            return;
+        }
+        compute(moments(data));
+    }
+
+    /**
+     * Compute the root-mean square error, the mean absolute error, R squared, the Pearson correlation and the bias
+     * from the error sums of a streaming pass and print to the standard output.
+     * @param moments error sums of each trait
+     */
+    public void computeAll(ErrorMoments[] moments){
+        try {
             String[] arr = {"Extra", "Neuro", "Agree", "Cons", "Open"};
-            //my $len = @{$matrix[0]};
-            double pre = 0.0, re = 0.0, f1 = 0.0;
             DecimalFormat twoDForm = new DecimalFormat("#.##");
-            System.out.println("Class\tRMSE");
-            for (int col = 0; col < length; col++) {
-                int colPred = col + length;
-                String str = computeRMSE(list, col, colPred);
-                System.out.println(arr[col] + "\t" + str);
+            System.out.println("Class\tRMSE\tMAE\tR2\tPearson\tBias");
+            TraitScores scores = scoreAll(moments);
+            for (int col = 0; col < scores.traits(); col++) {
+                StringBuilder str = new StringBuilder(arr[col]);
+                for (int m = 0; m < scores.measures(); m++) {
+                    str.append('\t').append(twoDForm.format(scores.value(col, m)));
+                }
+                System.out.println(str);
             }
-            double meanPre = calMean(rmseList);
-            System.out.println("Avg\t" + twoDForm.format(meanPre) + "\t");
-
+            StringBuilder str = new StringBuilder("Avg");
+            for (int m = 0; m < scores.measures(); m++) {
+                str.append('\t').append(twoDForm.format(scores.average(m)));
+            }
+            System.out.println(str);
         } catch (Exception ex) {
             System.out.println("Please check the format of your input file.");
         }
     }
 
+    /**
+     * Compute the root-mean square error, the mean absolute error, R squared, the Pearson correlation and the bias
+     * of every trait from the error sums of a streaming pass.
+     * @param moments error sums of each trait
+     * @return the measures of each trait
+     */
+    public TraitScores scoreAll(ErrorMoments[] moments) {
+        double[][] values = new double[moments.length][];
+        for (int col = 0; col < moments.length; col++) {
+            values[col] = new double[]{moments[col].rmse(), moments[col].mae(), moments[col].rSquared(),
+                moments[col].pearson(), moments[col].bias()};
+        }
+        return new TraitScores(ALL, values);
+    }
+
+    /**
+     * Compute all the numeric measures from the numeric columns and print to the standard output.
+     * @param data reference and predicted value columns
+     */
+    public void computeAll(InstanceColumns data){
+        if (data.size() == 0) {
+            System.out.println("Please check the format of your input file.");
+            return;
+        }
+        computeAll(moments(data));
+    }
+
+    /**
+     * Compute all the numeric measures of every trait from the numeric columns.
+     * @param data reference and predicted value columns
+     * @return the measures of each trait
+     */
+    public TraitScores scoreAll(InstanceColumns data) {
+        return scoreAll(moments(data));
+    }
+
+    /**
+     * Accumulates the error sums of every trait in one pass over its columns.
+     */
+    private static ErrorMoments[] moments(InstanceColumns data) {
+        ErrorMoments[] moments = new ErrorMoments[data.traits()];
+        for (int col = 0; col < data.traits(); col++) {
+            double[] refCol = data.refValues(col);
+            double[] predCol = data.predValues(col);
+            moments[col] = new ErrorMoments();
+            for (int row = 0; row < data.size(); row++) {
+                moments[col].add(refCol[row], predCol[row]);
+            }
+        }
+        return moments;
+    }
+
     /**
      * Calculate the mean with respect to the number of elements. This is
      * defined as<p/>
@@ -116,26 +229,16 @@ public class PersonalityNumericScorer {
      * @param list - reference and predicted labels list
      * @param colRef - index of the reference label
      * @param colPred - index of the predicted label
-     * @return string containing the value of precision, recall and f-measure
+     * @return the root-mean square error
+     * @throws NumberFormatException if a value is not a number
      */
-    private String computeRMSE(ArrayList list, int colRef, int colPred) {
-        String str = "";
-        try{
-        double errorSum=0;
+    private double computeRMSE(ArrayList list, int colRef, int colPred) {
+        ErrorMoments moments = new ErrorMoments();
         for (int row = 0; row < list.size(); row++) {
             String[] inst = (String[])list.get(row);
-            double ac = Double.parseDouble(inst[colRef]);
-            double pred = Double.parseDouble(inst[colPred]);
-            errorSum += Math.pow(pred-ac,2);
-        }
-        double rmse = Math.sqrt(errorSum/list.size());        
-            DecimalFormat twoDForm = new DecimalFormat("#.##");
-            rmseList.add(rmse);
-            str = twoDForm.format(rmse);
-        }catch(Exception ex){
-            System.err.println("Problem in calculating RMSE. Please check the format of your input file.");
+            moments.add(Double.parseDouble(inst[colRef]), Double.parseDouble(inst[colPred]));
         }
-        return str;
+        return moments.rmse();
     }    
     
     /**
@@ -9,8 +9,14 @@
 package personalityscorer;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
@@ -35,6 +41,8 @@ import org.apache.commons.cli.ParseException;
  */
 public class PersonalityScorer {
 
+    private static final int DEFAULT_TRIALS = 10000;
+
     /**
      * Default constructor
      */
@@ -71,7 +79,7 @@ public class PersonalityScorer {
         // create the Options
         Option labelFile = OptionBuilder.withArgName("FILE")
                 .hasArg()
-                .withDescription("please use a file containing reference and predicted labels.")
+                .withDescription("please use a file containing reference and predicted labels, - for the standard input.")
                 .create("i");
         Option ua = OptionBuilder.withArgName("un-weighted average")
                 .withDescription("please use this option to get un-weighted average.")
@@ -82,30 +90,201 @@ public class PersonalityScorer {
         Option n = OptionBuilder.withArgName("RMSE")
                 .withDescription("please use this option to get root mean square error.")
                 .create("n");
+        Option errors = OptionBuilder.withArgName("error measures")
+                .withDescription("please use this option with -n to also get the mean absolute error, R squared, Pearson correlation and bias.")
+                .create("e");
+        Option joint = OptionBuilder.withArgName("joint measures")
+                .withDescription("please use this option to get subset accuracy and hamming loss over all traits.")
+                .create("j");
+        Option threads = OptionBuilder.withArgName("N")
+                .hasArg()
+                .withDescription("please use this option to parse the label file in parallel with N threads, in streaming mode.")
+                .create("t");
+        Option resamples = OptionBuilder.withArgName("N")
+                .hasArg()
+                .withDescription("please use this option to get 95% bootstrap confidence intervals of the measures from N resamples.")
+                .create("b");
+        Option compare = OptionBuilder.withArgName("FILE")
+                .hasArg()
+                .withDescription("please use this option to compare the predictions of the -i file with the predictions of FILE for the same instances, with a randomization test.")
+                .create("c");
+        Option trials = OptionBuilder.withArgName("N")
+                .hasArg()
+                .withDescription("please use this option to set the largest number of randomization trials of -c, 10000 by default.")
+                .create("p");
+        Option mcnemar = OptionBuilder.withArgName("McNemar")
+                .withDescription("please use this option with -c to compare the correctness of the two systems with McNemar's test.")
+                .create("m");
+        Option write = OptionBuilder.withArgName("FILE")
+                .hasArg()
+                .withDescription("please use this option to save the partial scores of the label file to FILE instead of printing the scores, in streaming mode.")
+                .create("w");
+        Option reduce = OptionBuilder.withArgName("FILES")
+                .hasArgs()
+                .withDescription("please use this option to print the scores of partial score files saved with -w, instead of a label file.")
+                .create("r");
+        Option gold = OptionBuilder.withArgName("FILE")
+                .hasArg()
+                .withDescription("please use this option to join the reference labels of FILE with the predicted labels of the -i file by instance id, both files having the id and the labels in their first two columns.")
+                .create("g");
+        Option external = OptionBuilder.withArgName("MB")
+                .hasArg()
+                .withDescription("please use this option with -g to join files larger than memory by sorting them on disk, using at most MB megabytes, in streaming mode.")
+                .create("x");
+        Option keep = OptionBuilder.withArgName("index")
+                .withDescription("please use this option with -g to keep a compiled index of the reference file in FILE.idx, which is reused by later runs until the reference file changes.")
+                .create("k");
+        Option output = OptionBuilder.withArgName("FILE")
+                .hasArg()
+                .withDescription("please use this option to convert the -i label file to the binary form in FILE instead of scoring it.")
+                .create("o");
+        Option leaderboard = OptionBuilder.withArgName("DIRS|GLOBS|FILES")
+                .hasArgs()
+                .withDescription("please use this option to score many label files, or prediction files with -g, in one run and rank them in a leaderboard, instead of a label file.")
+                .create("l");
+        Option csv = OptionBuilder.withArgName("CSV")
+                .withDescription("please use this option with -l to print the leaderboard as CSV.")
+                .create("v");
+        Option daemon = OptionBuilder.withArgName("[HOST:]PORT")
+                .hasArg()
+                .withDescription("please use this option to score predictions posted over HTTP to /score, on localhost unless a HOST is given, instead of a label file.")
+                .create("d");
+        Option coprocess = OptionBuilder.withArgName("co-process")
+                .withDescription("please use this option to score the predictions framed on the standard input and answer each on the standard output, as the co-process of another program, instead of a label file.")
+                .create("a");
+        Option stream = OptionBuilder.withArgName("streaming")
+                .withDescription("please use this option to score the label file in a single streaming pass without keeping the instances in memory.")
+                .create("s");
 
         Options options = new Options();
         options.addOption(labelFile);        
         options.addOption(ua);
         options.addOption(f1);
         options.addOption(n);
+        options.addOption(joint);
+        options.addOption(errors);
+        options.addOption(stream);
+        options.addOption(threads);
+        options.addOption(resamples);
+        options.addOption(compare);
+        options.addOption(trials);
+        options.addOption(mcnemar);
+        options.addOption(write);
+        options.addOption(reduce);
+        options.addOption(gold);
+        options.addOption(external);
+        options.addOption(keep);
+        options.addOption(output);
+        options.addOption(leaderboard);
+        options.addOption(csv);
+        options.addOption(daemon);
+        options.addOption(coprocess);
         String usageString = "java -jar <PersonalityScorer.jar>";
         String header = "with the following options:\n\n";
         String footer = "e.g., java -jar PersonalityScorer.jar -i myp_fabio-nvrda2cmlf.txt -u -f"
-                + "\nOR\njava -jar PersonalityScorer.jar -i myp_fabio-numeric.txt -n\n\n"
+                + "\nOR\njava -jar PersonalityScorer.jar -i myp_fabio-numeric.txt -n\n"
+                + "\nAdd -e to -n to also get the mean absolute error, R squared, Pearson correlation and bias.\n"
+                + "\nAdd -s to score large files in a single streaming pass, or -t <N> to parse them with N threads."
+                + " With -i - the labels are read from the standard input, in streaming mode.\n"
+                + "\nAdd -b <N> to print 95% bootstrap confidence intervals from N resamples, computed with -t <N> threads or one per processor.\n"
+                + "\nAdd -c <FILE> to compare the predictions of the -i file with those of another file, with up to -p <N> randomization trials, or with McNemar's test with -m.\n"
+                + "\nParts of a label file can be scored separately with -w <FILE> and their partial scores combined with -r <FILES>.\n"
+                + "\nAdd -g <FILE> when the predictions of the -i file are not on the lines of their reference labels, to join them with the reference labels of FILE by instance id, or -x <MB> to join files larger than memory by sorting them on disk within MB megabytes."
+                + " Add -k to keep a compiled index of the -g file for later runs against it.\n"
+                + "\nA label file can be converted to a compact binary form with -o <FILE>, binary label files are scored as label files."
+                + " Label files compressed with gzip or deflate are decompressed while they are scored,"
+                + " and the label files of a zip archive are scored without extracting them.\n"
+                + "\nAdd -l <DIRS|GLOBS|FILES> instead of -i to rank many label files in one leaderboard, scored with -t <N> threads or one per processor;"
+                + " with -g the reference file is read once for all of them. Add -v to print the leaderboard as CSV.\n"
+                + "\nAdd -d <[HOST:]PORT> instead of -i to keep scoring the predictions posted to http://HOST:PORT/score, answered in JSON;"
+                + " with -g the posted predictions are joined with the reference file, read once."
+                + " Add -a instead to answer the predictions framed on the standard input, as a co-process.\n\n"
                 +"Please keep in mind that the input format for numeric and class predictions is different."
                 +" Therefore, when you select -n option you might not select other two options (i.e., -f -u) and vice-versa.\n\n";
         try {
             // parse the command line arguments
             CommandLine cmds = parser.parse(options, args);
             if(cmds.hasOption("i")){
-                this.checkFileExistance(cmds.getOptionValue("i"));
+                if(!InstanceReader.STDIN.equals(cmds.getOptionValue("i"))){
+                    this.checkFileExistance(cmds.getOptionValue("i"));
+                }
                 cmdTable.put("i", cmds.getOptionValue("i"));
+                if(InstanceReader.isStream(cmds.getOptionValue("i")) && !cmds.hasOption("b") && !cmds.hasOption("c")){
+                    cmdTable.put("s", cmds.getOptionValue("s"));
+                }
+                if(this.isZip(cmds.getOptionValue("i")) && (cmds.hasOption("c") || cmds.hasOption("b")
+                        || cmds.hasOption("g") || cmds.hasOption("w") || cmds.hasOption("o"))){
+                    throw new ParseException("The label files of a zip archive are scored one by one, -c, -b, -g, -w and -o can not be used with a zip archive.");
+                }
+            }else if(cmds.hasOption("r")){
+                String[] partFiles = cmds.getOptionValues("r");
+                for (int i = 0; i < partFiles.length; i++) {
+                    this.checkFileExistance(partFiles[i]);
+                }
+                cmdTable.put("r", partFiles);
+            }else if(cmds.hasOption("a")){
+                cmdTable.put("a", cmds.getOptionValue("a"));
+            }else if(cmds.hasOption("d")){
+                cmdTable.put("d", cmds.getOptionValue("d"));
+            }else if(cmds.hasOption("l")){
+                cmdTable.put("l", cmds.getOptionValues("l"));
+                if(cmds.hasOption("v")){
+                    cmdTable.put("v", cmds.getOptionValue("v"));
+                }
             }else{
                 formatter.printHelp(usageString, header, options, footer);
                 System.exit(0);
             }
+            if(cmds.hasOption("g")){
+                if(cmds.hasOption("w") && !cmds.hasOption("x")){
+                    throw new ParseException("The partial scores of -w can only be saved with -g when joining with -x.");
+                }
+                this.checkFileExistance(cmds.getOptionValue("g"));
+                cmdTable.put("g", cmds.getOptionValue("g"));
+            }
+            if(cmds.hasOption("o")){
+                cmdTable.put("o", cmds.getOptionValue("o"));
+            }
+            if(cmds.hasOption("k")){
+                if(!cmds.hasOption("g")){
+                    throw new ParseException("The -k option keeps an index of the -g file, please give the -g file.");
+                }
+                cmdTable.put("k", cmds.getOptionValue("k"));
+            }
+            if(cmds.hasOption("x")){
+                if(!cmds.hasOption("g")){
+                    throw new ParseException("The -x option joins the -i file with the -g file, please give the -g file.");
+                }
+                cmdTable.put("x", Integer.valueOf(cmds.getOptionValue("x")));
+                cmdTable.put("s", cmds.getOptionValue("s"));
+            }
+            if(cmds.hasOption("s")){
+                cmdTable.put("s", cmds.getOptionValue("s"));
+            }
+            if(cmds.hasOption("t")){
+                cmdTable.put("t", Integer.valueOf(cmds.getOptionValue("t")));
+                cmdTable.put("s", cmds.getOptionValue("s"));
+            }
+            if(cmds.hasOption("b")){
+                cmdTable.put("b", Integer.valueOf(cmds.getOptionValue("b")));
+            }
+            if(cmds.hasOption("c")){
+                this.checkFileExistance(cmds.getOptionValue("c"));
+                cmdTable.put("c", cmds.getOptionValue("c"));
+                cmdTable.put("p", cmds.hasOption("p") ? Integer.valueOf(cmds.getOptionValue("p")) : DEFAULT_TRIALS);
+                if(cmds.hasOption("m")){
+                    cmdTable.put("m", cmds.getOptionValue("m"));
+                }
+            }
+            if(cmds.hasOption("w")){
+                cmdTable.put("w", cmds.getOptionValue("w"));
+                cmdTable.put("s", cmds.getOptionValue("s"));
+            }
             if(cmds.hasOption("n")){
                 cmdTable.put("n", cmds.getOptionValue("n"));
+                if(cmds.hasOption("e")){
+                    cmdTable.put("e", cmds.getOptionValue("e"));
+                }
                 return cmdTable;
             }
             if(cmds.hasOption("u") && cmds.hasOption("f")){
@@ -115,9 +294,16 @@ public class PersonalityScorer {
                 cmdTable.put("u", cmds.getOptionValue("u"));
             }else if (cmds.hasOption("f")){
                 cmdTable.put("f", cmds.getOptionValue("f"));
-            }else if (!cmds.hasOption("f") & !cmds.hasOption("f")){
+            }else if (!cmds.hasOption("j")){
                 cmdTable.put("u", cmds.getOptionValue("u"));
-            }            
+            }
+            if(cmds.hasOption("j")){
+                cmdTable.put("j", cmds.getOptionValue("j"));
+            }
+        } catch (NumberFormatException exp) {
+            formatter.printHelp(usageString, header, options, footer);
+            System.err.println("Please check the options. The numbers of threads, resamples, trials and megabytes must be numbers.\n");
+            System.exit(0);
         } catch (ParseException exp) {
             // Something went wrong
             formatter.printHelp(usageString, header, options, footer);
@@ -125,7 +311,424 @@ public class PersonalityScorer {
             System.exit(0);
         }
         return cmdTable;
-    }        
+    }
+
+    /**
+     * Reads the label file into columns. When the file can not be read the error is reported and the returned
+     * columns are empty.
+     * @param labelFile file containing reference and predicted labels
+     * @param numeric whether the file holds numeric values
+     * @return the columns of the label file
+     */
+    public InstanceColumns readColumns(String labelFile, boolean numeric) {
+        try {
+            if (!InstanceReader.isStream(labelFile) && BinaryLabelFile.isBinary(labelFile)) {
+                return BinaryLabelFile.readColumns(labelFile, numeric);
+            }
+            return numeric ? InstanceColumns.readNumeric(labelFile) : InstanceColumns.readLabels(labelFile);
+        } catch (FileNotFoundException ex) {
+            System.out.println("Please check your input file. Check that whether it is exist or not.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (Exception ex) {
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return new InstanceColumns(numeric);
+    }
+
+    /**
+     * Reads the label file into columns, joined by instance id with the reference labels of the -g file if given,
+     * through the index of the -g file with -k.
+     * @param labelFile file containing reference and predicted labels, or only predicted labels with -g
+     * @param numeric whether the file holds numeric values
+     * @param cmdTable the parsed options
+     * @return the columns of the label file
+     */
+    public InstanceColumns readColumns(String labelFile, boolean numeric, HashMap cmdTable) {
+        if (!cmdTable.containsKey("g")) {
+            return readColumns(labelFile, numeric);
+        }
+        try {
+            return IdJoin.join(cmdTable.get("g").toString(), labelFile, numeric, cmdTable.containsKey("k"));
+        } catch (FileNotFoundException ex) {
+            System.out.println("Please check your input file. Check that whether it is exist or not.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (Exception ex) {
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return new InstanceColumns(numeric);
+    }
+
+    /**
+     * Parses the label file once into columns and computes all the requested measures, un-weighted average,
+     * f-measures and/or the joint measures, from the same columns. For y/n labels the columns are counted once
+     * into a {@link PatternCube} and every measure is taken from it; other labels are scored from the columns.
+     * @param labelFile file containing reference and predicted labels
+     * @param cmdTable the parsed options
+     */
+    public void scoreLabels(String labelFile, HashMap cmdTable) {
+        InstanceColumns data = readColumns(labelFile, false, cmdTable);
+        PatternCube cube = PatternCube.fromColumns(data);
+        ConfusionCounts[] counts = cube != null && data.size() > 0 ? cubeCounts(cube, data) : null;
+        if (cmdTable.containsKey("u")) {
+            PersonalityScorerUA app1 = new PersonalityScorerUA();
+            if (counts != null) {
+                app1.compute(counts);
+            } else {
+                app1.compute(data);
+            }
+        }
+        if (cmdTable.containsKey("u") && cmdTable.containsKey("f")) {
+            System.out.println("");
+        }
+        if (cmdTable.containsKey("f")) {
+            PersonalityScorerF1 app2 = new PersonalityScorerF1();
+            if (counts != null) {
+                app2.compute(counts);
+            } else {
+                app2.compute(data);
+            }
+        }
+        if (cmdTable.containsKey("j")) {
+            if (cmdTable.containsKey("u") || cmdTable.containsKey("f")) {
+                System.out.println("");
+            }
+            new PersonalityScorerJoint().compute(cube);
+        }
+    }
+
+    /**
+     * Derives the per-trait counts from the cube, keeping the classes in the order of the first reference label
+     * of each column, as the column scorers do.
+     */
+    private ConfusionCounts[] cubeCounts(PatternCube cube, InstanceColumns data) {
+        ConfusionCounts[] counts = new ConfusionCounts[cube.traits()];
+        for (int col = 0; col < counts.length; col++) {
+            counts[col] = cube.traitCounts(col, data.refLabels(col)[0] == PatternCube.NEGATIVE);
+        }
+        return counts;
+    }
+
+    /**
+     * Reads the label file into columns and prints the requested measures with their bootstrap confidence intervals.
+     * @param labelFile file containing reference and predicted labels
+     * @param cmdTable the parsed options
+     */
+    public void bootstrap(String labelFile, HashMap cmdTable) {
+        int threads = cmdTable.containsKey("t") ? (Integer) cmdTable.get("t") : Runtime.getRuntime().availableProcessors();
+        PersonalityScorerBootstrap app = new PersonalityScorerBootstrap((Integer) cmdTable.get("b"), threads);
+        if (cmdTable.containsKey("n")) {
+            app.computeNumeric(readColumns(labelFile, true, cmdTable));
+        } else {
+            app.compute(readColumns(labelFile, false, cmdTable), cmdTable.containsKey("u"), cmdTable.containsKey("f"));
+        }
+        System.out.println("");
+    }
+
+    /**
+     * Reads the label files of two systems into columns and prints the requested measures of both systems with
+     * the p-values of their differences.
+     * @param labelFile file containing reference and predicted labels of the first system
+     * @param cmdTable the parsed options, the file of the second system is the value of "c"
+     */
+    public void compare(String labelFile, HashMap cmdTable) {
+        int threads = cmdTable.containsKey("t") ? (Integer) cmdTable.get("t") : Runtime.getRuntime().availableProcessors();
+        PersonalityScorerCompare app = new PersonalityScorerCompare((Integer) cmdTable.get("p"), threads);
+        String otherFile = cmdTable.get("c").toString();
+        boolean numeric = cmdTable.containsKey("n");
+        InstanceColumns a = readColumns(labelFile, numeric, cmdTable);
+        InstanceColumns b = readColumns(otherFile, numeric, cmdTable);
+        System.out.println("A: " + labelFile + "\nB: " + otherFile);
+        if (cmdTable.containsKey("m")) {
+            if (numeric) {
+                System.out.println("McNemar's test compares correct and wrong labels, it can not be used with -n.");
+            } else {
+                app.computeMcNemar(a, b);
+            }
+        } else if (numeric) {
+            app.computeNumeric(a, b);
+        } else {
+            app.compute(a, b, cmdTable.containsKey("u"), cmdTable.containsKey("f"));
+        }
+        System.out.println("");
+    }
+
+    /**
+     * Reads the label file into the accumulator, in parallel when a number of threads is given, or joined on disk
+     * with the reference labels of the -g file when a memory budget is given with -x. Binary label files are read
+     * by decoding their records.
+     * @param labelFile file containing reference and predicted labels
+     * @param acc empty accumulator
+     * @param cmdTable the parsed options
+     * @throws IOException if the label file can not be read
+     */
+    private <T extends Accumulator<T>> void readStream(String labelFile, T acc, HashMap cmdTable) throws IOException {
+        if (!InstanceReader.isStream(labelFile) && BinaryLabelFile.isBinary(labelFile) && !cmdTable.containsKey("g")) {
+            BinaryLabelFile.read(labelFile, acc);
+        } else if (cmdTable.containsKey("x")) {
+            new ExternalJoin((Integer) cmdTable.get("x"), acc instanceof NumericAccumulator)
+                    .join(cmdTable.get("g").toString(), labelFile, acc);
+        } else if (cmdTable.containsKey("t")) {
+            new ParallelReader((Integer) cmdTable.get("t")).read(labelFile, acc);
+        } else {
+            new InstanceReader().read(labelFile, acc);
+        }
+    }
+
+    /**
+     * Scores the label file in a single pass. Each line updates the per-trait accumulators and is then dropped,
+     * so the memory used does not grow with the size of the label file.
+     * @param labelFile file containing reference and predicted labels
+     * @param cmdTable the parsed options
+     */
+    public void scoreStream(String labelFile, HashMap cmdTable) {
+        try {
+            Accumulator<?> acc;
+            if (cmdTable.containsKey("n")) {
+                NumericAccumulator numbers = new NumericAccumulator();
+                readStream(labelFile, numbers, cmdTable);
+                acc = numbers;
+            } else {
+                LabelAccumulator labels = new LabelAccumulator();
+                readStream(labelFile, labels, cmdTable);
+                acc = labels;
+            }
+            if (cmdTable.containsKey("w")) {
+                acc.save(cmdTable.get("w").toString());
+                System.out.println("Partial scores saved to " + cmdTable.get("w"));
+            } else {
+                printScores(acc, cmdTable);
+            }
+        } catch (FileNotFoundException ex) {
+            System.out.println("Please check your input file. Check that whether it is exist or not.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (IOException ex) {
+            System.out.println("Please check the format of your input file.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Merges partial score files, in the given order, and prints the scores of all the parts together.
+     * The files must have been saved with the same kind of scores, i.e., all with or all without -n.
+     * @param partFiles files written with the -w option
+     * @param cmdTable the parsed options
+     */
+    public void reduce(String[] partFiles, HashMap cmdTable) {
+        Accumulator<?> acc = cmdTable.containsKey("n") ? new NumericAccumulator() : new LabelAccumulator();
+        try {
+            for (int i = 0; i < partFiles.length; i++) {
+                acc.mergeSaved(partFiles[i]);
+            }
+            printScores(acc, cmdTable);
+        } catch (FileNotFoundException ex) {
+            System.out.println("Please check your input file. Check that whether it is exist or not.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (IOException ex) {
+            System.out.println("Please check the format of your partial score files.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * @param fileName input file
+     * @return whether the file is a zip archive, false if it can not be read
+     */
+    public boolean isZip(String fileName) {
+        if (InstanceReader.isStream(fileName)) {
+            return false;
+        }
+        try {
+            return ZipLabelFiles.isZip(fileName);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Scores the label files of a zip archive without extracting them, the label files concurrently with -t
+     * threads or one per processor, and prints the scores of each label file in the order of the archive.
+     * @param zipFile zip archive holding label files
+     * @param cmdTable the parsed options
+     */
+    public void scoreArchive(String zipFile, HashMap cmdTable) {
+        int threads = cmdTable.containsKey("t") ? (Integer) cmdTable.get("t") : Runtime.getRuntime().availableProcessors();
+        try {
+            ZipLabelFiles archive = new ZipLabelFiles(zipFile, cmdTable.containsKey("n"));
+            ArrayList<String> entries = archive.getEntries();
+            if (entries.isEmpty()) {
+                System.out.println("Please check your input file. " + zipFile + " holds no "
+                        + (cmdTable.containsKey("n") ? "numeric" : "label") + " files.");
+                return;
+            }
+            ArrayList<Accumulator<?>> scores = archive.read(threads);
+            for (int i = 0; i < entries.size(); i++) {
+                System.out.println(entries.get(i));
+                scores.get(i).reportErrors();
+                printScores(scores.get(i), cmdTable);
+                if (!cmdTable.containsKey("n")) {
+                    System.out.println("");
+                }
+            }
+        } catch (FileNotFoundException ex) {
+            System.out.println("Please check your input file. Check that whether it is exist or not.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (IOException ex) {
+            System.out.println("Please check the format of your input file.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Scores many label files in one run and prints them ranked in one leaderboard. With -g the reference file is
+     * read once, or mapped from its index with -k, and the predictions of every file are joined with it.
+     * @param names directories, glob patterns or files to score
+     * @param cmdTable the parsed options
+     */
+    public void leaderboard(String[] names, HashMap cmdTable) {
+        int threads = cmdTable.containsKey("t") ? (Integer) cmdTable.get("t") : Runtime.getRuntime().availableProcessors();
+        boolean numeric = cmdTable.containsKey("n");
+        Leaderboard board = new Leaderboard(numeric, cmdTable.containsKey("u"), cmdTable.containsKey("f"),
+                cmdTable.containsKey("j"), cmdTable.containsKey("e"), threads);
+        try {
+            ArrayList<String> files = Leaderboard.listFiles(names);
+            IdJoin gold = null;
+            if (cmdTable.containsKey("g")) {
+                String goldFile = cmdTable.get("g").toString();
+                gold = IdJoin.gold(goldFile, numeric, cmdTable.containsKey("k"));
+                gold.reportGold();
+                File goldPath = new File(goldFile).getCanonicalFile();
+                for (int i = files.size() - 1; i >= 0; i--) {
+                    if (new File(files.get(i)).getCanonicalFile().equals(goldPath)) {
+                        files.remove(i);
+                    }
+                }
+            }
+            if (files.isEmpty()) {
+                System.out.println("Please check your input files. No files were found to score.");
+                return;
+            }
+            ArrayList<Leaderboard.Entry> entries = board.score(files, gold);
+            board.rank(entries);
+            board.print(entries, cmdTable.containsKey("v"));
+        } catch (FileNotFoundException ex) {
+            System.out.println("Please check your input file. Check that whether it is exist or not.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (IOException ex) {
+            System.out.println("Please check the format of your input file.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Starts scoring the predictions posted over HTTP. With -g the reference file is read once, or mapped from its
+     * index with -k, and kept for all the requests.
+     * @param address port, or host and port, to listen on
+     * @param cmdTable the parsed options
+     */
+    public void serve(String address, HashMap cmdTable) {
+        int threads = cmdTable.containsKey("t") ? (Integer) cmdTable.get("t") : Runtime.getRuntime().availableProcessors();
+        boolean numeric = cmdTable.containsKey("n");
+        int colon = address.lastIndexOf(':');
+        String host = colon < 0 ? "localhost" : address.substring(0, colon);
+        try {
+            int port = Integer.parseInt(address.substring(colon + 1));
+            IdJoin gold = null;
+            if (cmdTable.containsKey("g")) {
+                gold = IdJoin.gold(cmdTable.get("g").toString(), numeric, cmdTable.containsKey("k"));
+                gold.reportGold();
+            }
+            ScoreServer server = new ScoreServer(numeric, gold, threads);
+            server.start(new InetSocketAddress(host, port));
+            System.out.println("Scoring the predictions posted to http://" + host + ":" + server.getAddress().getPort() + "/score");
+        } catch (NumberFormatException ex) {
+            System.out.println("Please check the options. The port of -d must be a number.");
+        } catch (FileNotFoundException ex) {
+            System.out.println("Please check your input file. Check that whether it is exist or not.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (IOException ex) {
+            System.out.println("Please check the reference file and the address " + address + ".");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Answers the predictions framed on the standard input, on the standard output, until the end of the input.
+     * Anything else printed goes to the standard error, so the answers are not mixed with it. With -g the reference
+     * file is read once, or mapped from its index with -k, before the first request.
+     * @param cmdTable the parsed options
+     */
+    public void coprocess(HashMap cmdTable) {
+        boolean numeric = cmdTable.containsKey("n");
+        PrintStream out = System.out;
+        System.setOut(System.err);
+        try {
+            IdJoin gold = null;
+            if (cmdTable.containsKey("g")) {
+                gold = IdJoin.gold(cmdTable.get("g").toString(), numeric, cmdTable.containsKey("k"));
+                gold.reportGold();
+            }
+            new CoProcess(numeric, gold).run(System.in, out);
+        } catch (FileNotFoundException ex) {
+            System.out.println("Please check your input file. Check that whether it is exist or not.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (IOException ex) {
+            System.out.println("Please check the requests on the standard input.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /**
+     * Converts the label file to the binary form.
+     * @param labelFile file containing reference and predicted labels
+     * @param cmdTable the parsed options, the binary file is the value of "o"
+     */
+    public void convert(String labelFile, HashMap cmdTable) {
+        try {
+            long rows = BinaryLabelFile.convert(labelFile, cmdTable.get("o").toString(), cmdTable.containsKey("n"));
+            System.out.println(rows + " instances converted to " + cmdTable.get("o"));
+        } catch (FileNotFoundException ex) {
+            System.out.println("Please check your input file. Check that whether it is exist or not.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (IOException ex) {
+            System.out.println("Please check the format of your input file.");
+            Logger.getLogger(PersonalityScorer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Prints the requested measures of a numeric or label accumulator.
+     */
+    private void printScores(Accumulator<?> acc, HashMap cmdTable) {
+        if (acc instanceof NumericAccumulator) {
+            if (cmdTable.containsKey("e")) {
+                new PersonalityNumericScorer().computeAll(((NumericAccumulator) acc).getMoments());
+            } else {
+                new PersonalityNumericScorer().compute(((NumericAccumulator) acc).getMoments());
+            }
+            System.out.println("");
+            return;
+        }
+        LabelAccumulator labels = (LabelAccumulator) acc;
+        ConfusionCounts[] counts = labels.getCounts();
+        if (cmdTable.containsKey("u")) {
+            new PersonalityScorerUA().compute(counts);
+        }
+        if (cmdTable.containsKey("u") && cmdTable.containsKey("f")) {
+            System.out.println("");
+        }
+        if (cmdTable.containsKey("f")) {
+            new PersonalityScorerF1().compute(counts);
+        }
+        if (cmdTable.containsKey("j")) {
+            if (cmdTable.containsKey("u") || cmdTable.containsKey("f")) {
+                System.out.println("");
+            }
+            new PersonalityScorerJoint().compute(labels.getCube());
+        }
+    }
+
     /**
      * @param args the command line arguments
      */
@@ -133,7 +736,31 @@ public class PersonalityScorer {
         // TODO code application logic here
         PersonalityScorer obj = new PersonalityScorer();
         HashMap cmdTable = obj.parseCommands(args);
+        if (cmdTable.containsKey("r")) {
+            obj.reduce((String[]) cmdTable.get("r"), cmdTable);
+            return;
+        }
+        if (cmdTable.containsKey("a")) {
+            obj.coprocess(cmdTable);
+            return;
+        }
+        if (cmdTable.containsKey("d")) {
+            obj.serve(cmdTable.get("d").toString(), cmdTable);
+            return;
+        }
+        if (cmdTable.containsKey("l")) {
+            obj.leaderboard((String[]) cmdTable.get("l"), cmdTable);
+            return;
+        }
         String labelFile = cmdTable.get("i").toString();
+        if (cmdTable.containsKey("o")) {
+            obj.convert(labelFile, cmdTable);
+            return;
+        }
+        if (obj.isZip(labelFile)) {
+            obj.scoreArchive(labelFile, cmdTable);
+            return;
+        }
         
 //        String fName = "/Users/firojalam/Study_PhD_projects/Personality_traits_WCPR14/scorers-wcpr14/myp_fabio-nvrda2cmlf.txt";
 //        PersonalityScorerUA app1 = new PersonalityScorerUA();        
@@ -142,27 +769,22 @@ public class PersonalityScorer {
 //        PersonalityScorerF1 app2 = new PersonalityScorerF1();        
 //        list = app2.readInstanceList(fName);
 //        app2.compute(list);
-        if(cmdTable.containsKey("n")){
+        if(cmdTable.containsKey("c")){
+            obj.compare(labelFile, cmdTable);
+        }else if(cmdTable.containsKey("b")){
+            obj.bootstrap(labelFile, cmdTable);
+        }else if(cmdTable.containsKey("s") && (!cmdTable.containsKey("g") || cmdTable.containsKey("x"))){
+            obj.scoreStream(labelFile, cmdTable);
+        }else if(cmdTable.containsKey("n")){
             PersonalityNumericScorer app1 = new PersonalityNumericScorer();
-            ArrayList list = app1.readInstanceList(labelFile);
-            app1.compute(list); 
-            System.out.println("");
-        }else if(cmdTable.containsKey("u") && cmdTable.containsKey("f")){
-            PersonalityScorerUA app1 = new PersonalityScorerUA();
-            ArrayList list = app1.readInstanceList(labelFile);
-            app1.compute(list); 
+            if(cmdTable.containsKey("e")){
+                app1.computeAll(obj.readColumns(labelFile, true, cmdTable));
+            }else{
+                app1.compute(obj.readColumns(labelFile, true, cmdTable));
+            }
             System.out.println("");
-            PersonalityScorerF1 app2 = new PersonalityScorerF1();
-            list = app2.readInstanceList(labelFile);
-            app2.compute(list);            
-        }else if(cmdTable.containsKey("u")){
-            PersonalityScorerUA app1 = new PersonalityScorerUA();
-            ArrayList list = app1.readInstanceList(labelFile);
-            app1.compute(list);                    
-        }else if(cmdTable.containsKey("f")){
-            PersonalityScorerF1 app2 = new PersonalityScorerF1();
-            ArrayList list = app2.readInstanceList(labelFile);
-            app2.compute(list);            
+        }else{
+            obj.scoreLabels(labelFile, cmdTable);
         }
     }//end main
 }
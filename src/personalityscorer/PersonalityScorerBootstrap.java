@@ -0,0 +1,224 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+/**
+ * Calculates 95% bootstrap confidence intervals of the un-weighted average and the f-measure of each trait, or of
+ * the root-mean square error for numeric predictions, next to the measures themselves.
+ * The label rows are grouped into their distinct patterns of reference and predicted labels, so a resample only
+ * reweights a few hundred patterns whatever the number of instances. Numeric rows are rarely equal, they are
+ * spread over at most {@link #MAX_BUCKETS} buckets of error sums and the buckets are resampled; with fewer
+ * instances every instance is its own bucket.
+ * @see Bootstrap
+ * @author Firoj Alam
+ */
+public class PersonalityScorerBootstrap {
+
+    public static final double LEVEL = 0.95;
+    public static final int MAX_BUCKETS = 10000;
+
+    private final int resamples;
+    private final long seed;
+    private final Bootstrap bootstrap;
+
+    /**
+     * @param resamples number of resamples
+     * @param threads number of worker threads
+     */
+    public PersonalityScorerBootstrap(int resamples, int threads) {
+        this.resamples = resamples;
+        this.seed = Bootstrap.DEFAULT_SEED;
+        this.bootstrap = new Bootstrap(resamples, seed, threads);
+    }
+
+    /**
+     * Compute the results for the label columns and print to the standard output.
+     * @param data reference and predicted label columns
+     * @param ua whether to print the un-weighted average
+     * @param f1 whether to print the f-measure
+     */
+    public void compute(InstanceColumns data, boolean ua, boolean f1) {
+        try {
+            if (data.size() == 0) {
+                throw new IllegalArgumentException("No instances");
+            }
+            final int traits = data.traits();
+            HashMap<String, Integer> index = new HashMap<String, Integer>();
+            final ArrayList<byte[]> patterns = new ArrayList<byte[]>();
+            ArrayList<Long> counts = new ArrayList<Long>();
+            byte[] row = new byte[2 * traits];
+            for (int i = 0; i < data.size(); i++) {
+                for (int col = 0; col < traits; col++) {
+                    row[col] = data.refLabels(col)[i];
+                    row[traits + col] = data.predLabels(col)[i];
+                }
+                String key = new String(row, StandardCharsets.ISO_8859_1);
+                Integer k = index.get(key);
+                if (k == null) {
+                    index.put(key, patterns.size());
+                    patterns.add(row.clone());
+                    counts.add(1L);
+                } else {
+                    counts.set(k, counts.get(k) + 1);
+                }
+            }
+            double[] means = new double[patterns.size()];
+            long[] full = new long[patterns.size()];
+            for (int k = 0; k < means.length; k++) {
+                full[k] = counts.get(k);
+                means[k] = full[k];
+            }
+            Bootstrap.Statistic stat = new Bootstrap.Statistic() {
+                @Override
+                public double[] compute(long[] weights) {
+                    ConfusionCounts[] traitCounts = new ConfusionCounts[traits];
+                    for (int col = 0; col < traits; col++) {
+                        traitCounts[col] = new ConfusionCounts();
+                    }
+                    for (int k = 0; k < weights.length; k++) {
+                        if (weights[k] == 0) {
+                            continue;
+                        }
+                        byte[] pattern = patterns.get(k);
+                        for (int col = 0; col < traits; col++) {
+                            traitCounts[col].add((char) (pattern[col] & 0xFF), (char) (pattern[traits + col] & 0xFF), weights[k]);
+                        }
+                    }
+                    double[] measures = new double[2 * (traits + 1)];
+                    for (int col = 0; col < traits; col++) {
+                        measures[col] = PersonalityScorerUA.unweightedAverage(traitCounts[col]);
+                        double[] errors = PersonalityScorerF1.errorCounts(traitCounts[col]);
+                        measures[traits + 1 + col] = PersonalityScorerF1.fMeasure(errors[0], errors[1], errors[2]);
+                    }
+                    measures[traits] = mean(measures, 0, traits);
+                    measures[2 * traits + 1] = mean(measures, traits + 1, traits);
+                    return measures;
+                }
+            };
+            double[] point = stat.compute(full);
+            double[][] values = bootstrap.run(means, stat);
+            System.out.println("Bootstrap of " + resamples + " resamples over " + patterns.size() + " label patterns, "
+                    + Math.round(LEVEL * 100) + "% intervals");
+            if (ua) {
+                printTable("UA", point, values, 0, traits);
+            }
+            if (ua && f1) {
+                System.out.println("");
+            }
+            if (f1) {
+                printTable("F1", point, values, traits + 1, traits);
+            }
+        } catch (Exception ex) {
+            System.out.println("Please check the format of your input file.");
+        }
+    }
+
+    /**
+     * Compute the results for the numeric columns and print to the standard output.
+     * @param data reference and predicted value columns
+     */
+    public void computeNumeric(InstanceColumns data) {
+        try {
+            if (data.size() == 0) {
+                throw new IllegalArgumentException("No instances");
+            }
+            final int traits = data.traits();
+            int size = data.size();
+            final int buckets = Math.min(size, MAX_BUCKETS);
+            ErrorMoments[][] moments = new ErrorMoments[traits][buckets];
+            for (int col = 0; col < traits; col++) {
+                for (int g = 0; g < buckets; g++) {
+                    moments[col][g] = new ErrorMoments();
+                }
+            }
+            SplittableRandom rng = new SplittableRandom(seed);
+            for (int i = 0; i < size; i++) {
+                int g = size <= MAX_BUCKETS ? i : rng.nextInt(buckets);
+                for (int col = 0; col < traits; col++) {
+                    moments[col][g].add(data.refValues(col)[i], data.predValues(col)[i]);
+                }
+            }
+            final double[][] errorSums = new double[traits][buckets];
+            final double[] bucketSizes = new double[buckets];
+            for (int g = 0; g < buckets; g++) {
+                bucketSizes[g] = moments[0][g].count();
+                for (int col = 0; col < traits; col++) {
+                    errorSums[col][g] = moments[col][g].squaredErrorSum();
+                }
+            }
+            Bootstrap.Statistic stat = new Bootstrap.Statistic() {
+                @Override
+                public double[] compute(long[] weights) {
+                    double n = 0;
+                    for (int g = 0; g < buckets; g++) {
+                        n += weights[g] * bucketSizes[g];
+                    }
+                    double[] measures = new double[traits + 1];
+                    for (int col = 0; col < traits; col++) {
+                        double sum = 0;
+                        double[] sums = errorSums[col];
+                        for (int g = 0; g < buckets; g++) {
+                            sum += weights[g] * sums[g];
+                        }
+                        measures[col] = Math.sqrt(sum / n);
+                    }
+                    measures[traits] = mean(measures, 0, traits);
+                    return measures;
+                }
+            };
+            double[] point = new double[traits + 1];
+            for (int col = 0; col < traits; col++) {
+                ErrorMoments all = new ErrorMoments();
+                for (int g = 0; g < buckets; g++) {
+                    all.merge(moments[col][g]);
+                }
+                point[col] = all.rmse();
+            }
+            point[traits] = mean(point, 0, traits);
+            double[] means = new double[buckets];
+            for (int g = 0; g < buckets; g++) {
+                means[g] = 1.0;
+            }
+            double[][] values = bootstrap.run(means, stat);
+            System.out.println("Bootstrap of " + resamples + " resamples over " + buckets + " buckets, "
+                    + Math.round(LEVEL * 100) + "% intervals");
+            printTable("RMSE", point, values, 0, traits);
+        } catch (Exception ex) {
+            System.out.println("Please check the format of your input file.");
+        }
+    }
+
+    /**
+     * Prints one measure of each trait and their average, with the bounds of their intervals.
+     */
+    private void printTable(String name, double[] point, double[][] values, int first, int traits) {
+        String[] arr = {"Extra", "Neuro", "Agree", "Cons", "Open"};
+        DecimalFormat twoDForm = new DecimalFormat("#.##");
+        System.out.println("Class\t" + name + "\tLow\tHigh");
+        for (int col = 0; col <= traits; col++) {
+            double[] ci = Bootstrap.interval(values, first + col, LEVEL);
+            String label = col == traits ? "Avg" : arr[col];
+            System.out.println(label + "\t" + twoDForm.format(point[first + col]) + "\t" + twoDForm.format(ci[0]) + "\t" + twoDForm.format(ci[1]));
+        }
+    }
+
+    private static double mean(double[] values, int from, int length) {
+        double sum = 0.0;
+        for (int i = from; i < from + length; i++) {
+            sum += values[i];
+        }
+        return sum / length;
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compares two systems which predicted the same instances, with the same reference labels and in the same order,
+ * and prints the measures of both systems with the p-value of their difference under a paired approximate
+ * randomization test.
+ * For labels, the instances on which the two systems differ are grouped into their distinct patterns of reference
+ * and predicted labels of all traits, and a trial only counts how many instances of each pattern are swapped.
+ * For numeric predictions the instances are grouped by the differences between the squared errors of the two
+ * systems, and a trial counts how many instances of each group are swapped; every instance is swapped on its own,
+ * so a trial costs one step per distinct difference. The correctness of the labels can also be compared with
+ * McNemar's test.
+ * @see RandomizationTest
+ * @see McNemarTest
+ * @author Firoj Alam
+ */
+public class PersonalityScorerCompare {
+
+    private final int trials;
+    private final int threads;
+    private final long seed = RandomizationTest.DEFAULT_SEED;
+
+    /**
+     * @param trials largest number of randomization trials
+     * @param threads number of worker threads
+     */
+    public PersonalityScorerCompare(int trials, int threads) {
+        this.trials = trials;
+        this.threads = threads;
+    }
+
+    /**
+     * Compute the results for the label columns of the two systems and print to the standard output.
+     * @param a reference and predicted label columns of the first system
+     * @param b reference and predicted label columns of the second system
+     * @param ua whether to compare the un-weighted averages
+     * @param f1 whether to compare the f-measures
+     */
+    public void compute(InstanceColumns a, InstanceColumns b, boolean ua, boolean f1) {
+        try {
+            if (a.size() == 0) {
+                throw new IllegalArgumentException("No instances");
+            }
+            if (!sameInstances(a, b)) {
+                return;
+            }
+            final int traits = a.traits();
+            int size = a.size();
+            final LabelIndex[] labels = new LabelIndex[traits];
+            for (int col = 0; col < traits; col++) {
+                labels[col] = new LabelIndex();
+                for (int row = 0; row < size; row++) {
+                    labels[col].intern((char) (a.refLabels(col)[row] & 0xFF));
+                    labels[col].intern((char) (a.predLabels(col)[row] & 0xFF));
+                    labels[col].intern((char) (b.predLabels(col)[row] & 0xFF));
+                }
+            }
+            // all the instances counted by trait and triple of reference, first and second prediction
+            final long[][] base = new long[traits][];
+            for (int col = 0; col < traits; col++) {
+                int n = labels[col].size();
+                base[col] = new long[n * n * n];
+            }
+            HashMap<String, Integer> index = new HashMap<String, Integer>();
+            final ArrayList<int[]> triples = new ArrayList<int[]>();
+            ArrayList<Long> counts = new ArrayList<Long>();
+            byte[] row = new byte[3 * traits];
+            int[] codes = new int[traits];
+            for (int i = 0; i < size; i++) {
+                boolean differ = false;
+                for (int col = 0; col < traits; col++) {
+                    byte g = a.refLabels(col)[i];
+                    byte pa = a.predLabels(col)[i];
+                    byte pb = b.predLabels(col)[i];
+                    codes[col] = triple(labels[col], g, pa, pb);
+                    base[col][codes[col]]++;
+                    row[col] = g;
+                    row[traits + col] = pa;
+                    row[2 * traits + col] = pb;
+                    differ |= pa != pb;
+                }
+                if (!differ) {
+                    continue;
+                }
+                String key = new String(row, StandardCharsets.ISO_8859_1);
+                Integer k = index.get(key);
+                if (k == null) {
+                    index.put(key, triples.size());
+                    triples.add(codes.clone());
+                    counts.add(1L);
+                } else {
+                    counts.set(k, counts.get(k) + 1);
+                }
+            }
+            long[] patternCounts = new long[counts.size()];
+            for (int k = 0; k < patternCounts.length; k++) {
+                patternCounts[k] = counts.get(k);
+            }
+            RandomizationTest.Statistic stat = new RandomizationTest.Statistic() {
+                @Override
+                public double[] compute(long[] swapped) {
+                    double[][] scores = labelScores(labels, base, triples, swapped);
+                    double[] diff = new double[scores[0].length];
+                    for (int m = 0; m < diff.length; m++) {
+                        diff[m] = Math.abs(scores[0][m] - scores[1][m]);
+                    }
+                    return diff;
+                }
+            };
+            double[][] scores = labelScores(labels, base, triples, new long[patternCounts.length]);
+            RandomizationTest test = new RandomizationTest(trials, seed, threads);
+            double[] p = test.run(patternCounts, stat);
+            System.out.println("Approximate randomization test of " + test.getTrialsRun() + " trials over "
+                    + patternCounts.length + " label patterns");
+            if (ua) {
+                printTable("UA", scores, p, 0, traits);
+            }
+            if (ua && f1) {
+                System.out.println("");
+            }
+            if (f1) {
+                printTable("F1", scores, p, traits + 1, traits);
+            }
+        } catch (Exception ex) {
+            System.out.println("Please check the format of your input file.");
+        }
+    }
+
+    /**
+     * Compute the results for the numeric columns of the two systems and print to the standard output.
+     * @param a reference and predicted value columns of the first system
+     * @param b reference and predicted value columns of the second system
+     */
+    public void computeNumeric(InstanceColumns a, InstanceColumns b) {
+        try {
+            if (a.size() == 0) {
+                throw new IllegalArgumentException("No instances");
+            }
+            if (!sameInstances(a, b)) {
+                return;
+            }
+            final int traits = a.traits();
+            int size = a.size();
+            // the squared errors of both systems, and the instances grouped by the differences of their squared
+            // errors, which a swap moves from one system to the other
+            final double[] errorsA = new double[traits];
+            final double[] errorsB = new double[traits];
+            final double[][] scores = new double[2][traits + 1];
+            ErrorMoments[] momentsA = new ErrorMoments[traits];
+            ErrorMoments[] momentsB = new ErrorMoments[traits];
+            for (int col = 0; col < traits; col++) {
+                momentsA[col] = new ErrorMoments();
+                momentsB[col] = new ErrorMoments();
+            }
+            HashMap<String, Integer> index = new HashMap<String, Integer>();
+            final ArrayList<double[]> deltas = new ArrayList<double[]>();
+            ArrayList<Long> counts = new ArrayList<Long>();
+            double[] delta = new double[traits];
+            char[] key = new char[4 * traits];
+            for (int i = 0; i < size; i++) {
+                boolean differ = false;
+                for (int col = 0; col < traits; col++) {
+                    double ref = a.refValues(col)[i];
+                    double ea = a.predValues(col)[i] - ref;
+                    double eb = b.predValues(col)[i] - ref;
+                    momentsA[col].add(ref, a.predValues(col)[i]);
+                    momentsB[col].add(ref, b.predValues(col)[i]);
+                    delta[col] = ea * ea - eb * eb;
+                    differ |= delta[col] != 0.0;
+                    long bits = Double.doubleToLongBits(delta[col]);
+                    for (int c = 0; c < 4; c++) {
+                        key[4 * col + c] = (char) (bits >>> (16 * c));
+                    }
+                }
+                if (!differ) {
+                    continue;
+                }
+                String k = new String(key);
+                Integer g = index.get(k);
+                if (g == null) {
+                    index.put(k, deltas.size());
+                    deltas.add(delta.clone());
+                    counts.add(1L);
+                } else {
+                    counts.set(g, counts.get(g) + 1);
+                }
+            }
+            for (int col = 0; col < traits; col++) {
+                errorsA[col] = momentsA[col].squaredErrorSum();
+                errorsB[col] = momentsB[col].squaredErrorSum();
+                scores[0][col] = momentsA[col].rmse();
+                scores[1][col] = momentsB[col].rmse();
+            }
+            scores[0][traits] = mean(scores[0], 0, traits);
+            scores[1][traits] = mean(scores[1], 0, traits);
+            final double n = size;
+            RandomizationTest.Statistic stat = new RandomizationTest.Statistic() {
+                @Override
+                public double[] compute(long[] swapped) {
+                    double[] moved = new double[traits];
+                    for (int g = 0; g < swapped.length; g++) {
+                        if (swapped[g] != 0) {
+                            double[] d = deltas.get(g);
+                            for (int col = 0; col < traits; col++) {
+                                moved[col] += swapped[g] * d[col];
+                            }
+                        }
+                    }
+                    double[] rmseA = new double[traits + 1];
+                    double[] rmseB = new double[traits + 1];
+                    for (int col = 0; col < traits; col++) {
+                        rmseA[col] = Math.sqrt(Math.max(errorsA[col] - moved[col], 0.0) / n);
+                        rmseB[col] = Math.sqrt(Math.max(errorsB[col] + moved[col], 0.0) / n);
+                    }
+                    rmseA[traits] = mean(rmseA, 0, traits);
+                    rmseB[traits] = mean(rmseB, 0, traits);
+                    double[] diff = new double[traits + 1];
+                    for (int m = 0; m <= traits; m++) {
+                        diff[m] = Math.abs(rmseA[m] - rmseB[m]);
+                    }
+                    return diff;
+                }
+            };
+            long[] groupCounts = new long[counts.size()];
+            for (int g = 0; g < groupCounts.length; g++) {
+                groupCounts[g] = counts.get(g);
+            }
+            RandomizationTest test = new RandomizationTest(trials, seed, threads);
+            double[] p = test.run(groupCounts, stat);
+            System.out.println("Approximate randomization test of " + test.getTrialsRun() + " trials over "
+                    + groupCounts.length + " error patterns");
+            printTable("RMSE", scores, p, 0, traits);
+        } catch (Exception ex) {
+            System.out.println("Please check the format of your input file.");
+        }
+    }
+
+    /**
+     * Compute McNemar's test of the correctness of each trait, and of all traits at once, for the label columns
+     * of the two systems and print to the standard output.
+     * @param a reference and predicted label columns of the first system
+     * @param b reference and predicted label columns of the second system
+     */
+    public void computeMcNemar(InstanceColumns a, InstanceColumns b) {
+        try {
+            if (a.size() == 0) {
+                throw new IllegalArgumentException("No instances");
+            }
+            if (!sameInstances(a, b)) {
+                return;
+            }
+            String[] arr = {"Extra", "Neuro", "Agree", "Cons", "Open"};
+            DecimalFormat twoDForm = new DecimalFormat("#.##");
+            DecimalFormat pForm = new DecimalFormat("#.####");
+            int traits = a.traits();
+            int size = a.size();
+            long[] allA = null;
+            long[] allB = null;
+            System.out.println("Class\tAcc(A)\tAcc(B)\tA only\tB only\tTest\tp");
+            for (int col = 0; col <= traits; col++) {
+                long[] bitsA;
+                long[] bitsB;
+                if (col < traits) {
+                    bitsA = McNemarTest.correct(a.refLabels(col), a.predLabels(col), size);
+                    bitsB = McNemarTest.correct(b.refLabels(col), b.predLabels(col), size);
+                    allA = and(allA, bitsA);
+                    allB = and(allB, bitsB);
+                } else {
+                    bitsA = allA;
+                    bitsB = allB;
+                }
+                McNemarTest test = new McNemarTest(bitsA, bitsB);
+                String label = col == traits ? "All" : arr[col];
+                System.out.println(label + "\t" + twoDForm.format((double) McNemarTest.count(bitsA) / size) + "\t"
+                        + twoDForm.format((double) McNemarTest.count(bitsB) / size) + "\t" + test.getOnlyA() + "\t"
+                        + test.getOnlyB() + "\t" + (test.isExact() ? "exact" : "chi2=" + twoDForm.format(test.chiSquared()))
+                        + "\t" + pForm.format(test.pValue()));
+            }
+        } catch (Exception ex) {
+            System.out.println("Please check the format of your input file.");
+        }
+    }
+
+    private static long[] and(long[] all, long[] bits) {
+        if (all == null) {
+            return bits.clone();
+        }
+        for (int w = 0; w < all.length; w++) {
+            all[w] &= bits[w];
+        }
+        return all;
+    }
+
+    /**
+     * Checks that the two systems predicted the same instances, i.e. the same number of instances and traits
+     * with the same reference labels or values.
+     */
+    static boolean sameInstances(InstanceColumns a, InstanceColumns b) {
+        boolean same = a.size() == b.size() && a.traits() == b.traits() && a.isNumeric() == b.isNumeric();
+        for (int col = 0; same && col < a.traits(); col++) {
+            for (int row = 0; same && row < a.size(); row++) {
+                same = a.isNumeric() ? a.refValues(col)[row] == b.refValues(col)[row]
+                        : a.refLabels(col)[row] == b.refLabels(col)[row];
+            }
+        }
+        if (!same) {
+            System.out.println("Please check the two input files. They must have the same instances, in the same order and with the same reference labels.");
+        }
+        return same;
+    }
+
+    private static int triple(LabelIndex labels, byte g, byte a, byte b) {
+        int n = labels.size();
+        return (labels.indexOf((char) (g & 0xFF)) * n + labels.indexOf((char) (a & 0xFF))) * n + labels.indexOf((char) (b & 0xFF));
+    }
+
+    /**
+     * Computes the un-weighted averages and f-measures of both systems after some instances of each pattern
+     * had their predictions swapped.
+     * @return the measures of the first and of the second system, each the un-weighted averages of the traits and
+     * their mean followed by the f-measures of the traits and their mean
+     */
+    private static double[][] labelScores(LabelIndex[] labels, long[][] base, ArrayList<int[]> triples, long[] swapped) {
+        int traits = labels.length;
+        double[][] scores = new double[2][2 * (traits + 1)];
+        for (int col = 0; col < traits; col++) {
+            long[] moved = new long[base[col].length];
+            for (int k = 0; k < swapped.length; k++) {
+                moved[triples.get(k)[col]] += swapped[k];
+            }
+            int n = labels[col].size();
+            ConfusionCounts countsA = new ConfusionCounts();
+            ConfusionCounts countsB = new ConfusionCounts();
+            for (int code = 0; code < base[col].length; code++) {
+                long c = base[col][code];
+                if (c == 0) {
+                    continue;
+                }
+                char g = labels[col].label(code / (n * n));
+                char pa = labels[col].label(code / n % n);
+                char pb = labels[col].label(code % n);
+                long s = moved[code];
+                if (c - s > 0) {
+                    countsA.add(g, pa, c - s);
+                    countsB.add(g, pb, c - s);
+                }
+                if (s > 0) {
+                    countsA.add(g, pb, s);
+                    countsB.add(g, pa, s);
+                }
+            }
+            ConfusionCounts[] both = {countsA, countsB};
+            for (int sys = 0; sys < 2; sys++) {
+                scores[sys][col] = PersonalityScorerUA.unweightedAverage(both[sys]);
+                double[] errors = PersonalityScorerF1.errorCounts(both[sys]);
+                scores[sys][traits + 1 + col] = PersonalityScorerF1.fMeasure(errors[0], errors[1], errors[2]);
+            }
+        }
+        for (int sys = 0; sys < 2; sys++) {
+            scores[sys][traits] = mean(scores[sys], 0, traits);
+            scores[sys][2 * traits + 1] = mean(scores[sys], traits + 1, traits);
+        }
+        return scores;
+    }
+
+    /**
+     * Prints one measure of each trait and their average for both systems, with the p-values of the differences.
+     */
+    private void printTable(String name, double[][] scores, double[] p, int first, int traits) {
+        String[] arr = {"Extra", "Neuro", "Agree", "Cons", "Open"};
+        DecimalFormat twoDForm = new DecimalFormat("#.##");
+        DecimalFormat pForm = new DecimalFormat("#.####");
+        System.out.println("Class\t" + name + "(A)\t" + name + "(B)\tp");
+        for (int col = 0; col <= traits; col++) {
+            String label = col == traits ? "Avg" : arr[col];
+            System.out.println(label + "\t" + twoDForm.format(scores[0][first + col]) + "\t"
+                    + twoDForm.format(scores[1][first + col]) + "\t" + pForm.format(p[first + col]));
+        }
+    }
+
+    private static double mean(double[] values, int from, int length) {
+        double sum = 0.0;
+        for (int i = from; i < from + length; i++) {
+            sum += values[i];
+        }
+        return sum / length;
+    }
+}
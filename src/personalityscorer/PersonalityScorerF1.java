@@ -8,10 +8,7 @@
 
 package personalityscorer;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.logging.Level;
@@ -20,16 +17,14 @@ import java.util.logging.Logger;
 /**
  * Calculates precision, recall and f-measure, designed specifically to measures personality traits.
  * The annotation labels for personality traits might be 2 or 3.
+ * A scorer keeps no state, the measures are returned as {@link TraitScores}, so one scorer can score any number
+ * of files, also on several threads at once.
  * @author Firoj Alam
  */
 public class PersonalityScorerF1 {
-    private ArrayList classNames;         
-    private ArrayList preList = new ArrayList();
-    private ArrayList reList = new ArrayList();
-    private ArrayList f1List = new ArrayList();
-    private ArrayList accList = new ArrayList();    
-    
-    
+
+    private static final String[] MEASURES = {"P", "R", "F1"};
+
     /**
      * Default constructor
      */
@@ -39,37 +34,19 @@ public class PersonalityScorerF1 {
      * Reads the instances from the input file, then reads the values from the lines of the file. Returns an multidimensional array containing the reference and predicted labels.
      * The format of the input file is the following. Contains reference file-id, reference labels followed 
      * by three tokens, then again predicted file-id, predicted labels followed by four tokens.
+     * The file is scanned through a memory-mapped buffer by {@link InstanceReader}.
      * @return the value of instanceList
      */
     public ArrayList readInstanceList(String fileName) {
         ArrayList instanceList = new ArrayList();
         try {
-            BufferedReader fileRead = new BufferedReader(new InputStreamReader(new FileInputStream(fileName)));
-            String str = "";
-            int i=1;
-            while ((str = fileRead.readLine()) != null) {
-                String[] strArr = str.split("\\s+");
-                String refID = strArr[0];
-                char [] refLabArr = strArr[1].toCharArray();
-                String predID = strArr[5];
-                char [] predLabArr = strArr[6].toCharArray();
-                if(!refID.equals(predID) && refLabArr.length!=predLabArr.length){
-                    System.err.println("\nPlease check instance ids and labels in your input file at line "+i );
-                }else{
-                    char result[] = new char[refLabArr.length + predLabArr.length];
-                    System.arraycopy(refLabArr, 0, result, 0, refLabArr.length);
-                    System.arraycopy(predLabArr, 0, result, refLabArr.length, predLabArr.length);
-                    instanceList.add(result);
-                }
-                i = i+1;
-            }//end read file
-            fileRead.close();
+            instanceList = new InstanceReader().readLabelList(fileName);
         } catch (FileNotFoundException ex) {
             System.out.println("Please check your input file. Check that whether it is exist or not.");
             Logger.getLogger(PersonalityScorerF1.class.getName()).log(Level.SEVERE, null, ex);
         } catch (Exception ex) {
             Logger.getLogger(PersonalityScorerF1.class.getName()).log(Level.SEVERE, null, ex);
-        }                
+        }
         return instanceList;
     }
 
@@ -79,27 +56,100 @@ public class PersonalityScorerF1 {
      */
     public void compute(ArrayList list){
         try {
-            char[] tmp = (char[]) list.get(0);
-            int length = tmp.length;
-            length = length / 2;
-            StringBuilder result = new StringBuilder();
-            String[] arr = {"Extra", "Neuro", "Agree", "Cons", "Open"};
-            double pre = 0.0, re = 0.0, f1 = 0.0;
-            DecimalFormat twoDForm = new DecimalFormat("#.##");
+            TraitScores scores = score(list);
+            System.out.println("Class\tP\tR\tF1");
+            print(scores);
+        } catch (Exception ex) {
+            System.out.println("Please check the format of your input file.");
+        }
+    }
+
+    /**
+     * Compute precision, recall and f-measure of every trait.
+     * @param list reference and predicted labels of each instance
+     * @return the measures of each trait
+     */
+    public TraitScores score(ArrayList list) {
+        char[] tmp = (char[]) list.get(0);
+        int length = tmp.length;
+        length = length / 2;
+        double[][] values = new double[length][];
+        for (int col = 0; col < length; col++) {
+            int colPred = col + length;
+            values[col] = computePreReF1(list, col, colPred);
+        }
+        return new TraitScores(MEASURES, values);
+    }
+
+    /**
+     * Compute the results from the label counts of a streaming pass and print to the standard output.
+     * @param counts label counts of each trait
+     */
+    public void compute(ConfusionCounts[] counts){
+        try {
             System.out.println("Class\tP\tR\tF1");
-            for (int col = 0; col < length; col++) {
-                int colPred = col + length;
-                String str = computePreReF1(list, col, colPred);
-                System.out.println(arr[col] + "\t" + str);
+            print(score(counts));
+        } catch (Exception ex) {
+            System.out.println("Please check the format of your input file.");
+        }
+    }
+
+    /**
+     * Compute precision, recall and f-measure of every trait from the label counts of a streaming pass.
+     * @param counts label counts of each trait
+     * @return the measures of each trait
+     */
+    public TraitScores score(ConfusionCounts[] counts) {
+        double[][] values = new double[counts.length][];
+        for (int col = 0; col < counts.length; col++) {
+            values[col] = computePreReF1(counts[col]);
+        }
+        return new TraitScores(MEASURES, values);
+    }
+
+    /**
+     * Compute the results from the label columns and print to the standard output.
+     * @param data reference and predicted label columns
+     */
+    public void compute(InstanceColumns data){
+        try {
+            if (data.size() == 0) {
+                throw new IllegalArgumentException("No instances");
             }
-            double meanPre = calMean(preList);
-            double meanRe = calMean(reList);
-            double meanF1 = calMean(f1List);
-            System.out.println("Avg\t" + twoDForm.format(meanPre) + "\t" + twoDForm.format(meanRe) + "\t" + twoDForm.format(meanF1));
+            System.out.println("Class\tP\tR\tF1");
+            print(score(data));
         } catch (Exception ex) {
             System.out.println("Please check the format of your input file.");
         }
     }
+
+    /**
+     * Compute precision, recall and f-measure of every trait from the label columns.
+     * @param data reference and predicted label columns
+     * @return the measures of each trait
+     */
+    public TraitScores score(InstanceColumns data) {
+        double[][] values = new double[data.traits()][];
+        for (int col = 0; col < data.traits(); col++) {
+            values[col] = computePreReF1(data, col);
+        }
+        return new TraitScores(MEASURES, values);
+    }
+
+    /**
+     * Prints the measures of each trait and their averages to the standard output.
+     */
+    private void print(TraitScores scores) {
+        String[] arr = {"Extra", "Neuro", "Agree", "Cons", "Open"};
+        DecimalFormat twoDForm = new DecimalFormat("#.##");
+        for (int col = 0; col < scores.traits(); col++) {
+            System.out.println(arr[col] + "\t" + twoDForm.format(scores.value(col, 0)) + "\t"
+                    + twoDForm.format(scores.value(col, 1)) + "\t" + twoDForm.format(scores.value(col, 2)));
+        }
+        System.out.println("Avg\t" + twoDForm.format(scores.average(0)) + "\t" + twoDForm.format(scores.average(1))
+                + "\t" + twoDForm.format(scores.average(2)));
+    }
+
     /**
      * Calculate the mean with respect to the number of elements. This is
      * defined as<p/>
@@ -124,20 +174,16 @@ public class PersonalityScorerF1 {
      * @param list - reference and predicted labels list
      * @param colRef - index of the reference label
      * @param colPred - index of the predicted label
-     * @return string containing the value of precision, recall and f-measure
+     * @return precision, recall and f-measure
      */
-    private String computePreReF1(ArrayList list, int colRef, int colPred) {
+    private double[] computePreReF1(ArrayList list, int colRef, int colPred) {
         double tp=0,fp=0,fn=0,tn=0;
-        String str="";
-        this.classNames = new ArrayList();
-        int[][] m_ConfusionMatrix = null;
+        LabelIndex classes = new LabelIndex();
         for (int row = 0; row < list.size(); row++) {
             char[] inst = (char[]) list.get(row);
-            if (!this.classNames.contains(inst[colRef])) {
-                classNames.add(inst[colRef]);
-            }
+            classes.intern(inst[colRef]);
         }
-        if(this.classNames.size()==2){
+        if(classes.size()==2){
             for (int row = 0; row < list.size(); row++) {
                 char[] inst = (char[]) list.get(row);
                 char ac = inst[colRef];
@@ -150,7 +196,7 @@ public class PersonalityScorerF1 {
                     fn++;
                 }
             }//end for loop        
-        }else if(this.classNames.size()==3){
+        }else if(classes.size()==3){
             for (int row = 0; row < list.size(); row++) {
                 char[] inst = (char[]) list.get(row);
                 char ac = inst[colRef];
@@ -164,21 +210,148 @@ public class PersonalityScorerF1 {
                 }
             }//end for loop                
         }
-        try{
-            DecimalFormat twoDForm = new DecimalFormat("#.##");
-            double pre = (tp / (tp + fp));
-            double re = (tp / (tp + fn));
-            double f1 = 2 * ((pre * re) / (pre + re));
-            double acc = tp / (tp + fp + fn);
-            preList.add(pre);
-            reList.add(re);
-            f1List.add(f1);
-            accList.add(acc);
-            str = twoDForm.format(pre) + "\t" + twoDForm.format(re) + "\t" + twoDForm.format(f1);        
-        }catch(Exception ex){
-            System.err.println("Problem in precision, recall and f-measure calculation.");
-        }
-        return str;
+        return preReF1(tp, fp, fn);
+    }
+
+    /**
+     * Reads the reference and predicted labels of one trait from the label columns then compute precision,recall and f-measure
+     * @param data reference and predicted label columns
+     * @param trait index of the trait
+     * @return precision, recall and f-measure
+     */
+    private double[] computePreReF1(InstanceColumns data, int trait) {
+        LabelBits bits = data.labelBits(trait);
+        if (bits != null) {
+            return computePreReF1(bits);
+        }
+        byte[] refCol = data.refLabels(trait);
+        byte[] predCol = data.predLabels(trait);
+        int size = data.size();
+        boolean[] seen = new boolean[256];
+        int classes = 0;
+        for (int row = 0; row < size; row++) {
+            int ac = refCol[row] & 0xFF;
+            if (!seen[ac]) {
+                seen[ac] = true;
+                classes++;
+            }
+        }
+        long tp = 0, fp = 0, fn = 0;
+        if (classes == 2) {
+            for (int row = 0; row < size; row++) {
+                byte ac = refCol[row];
+                byte pred = predCol[row];
+                if (ac == pred && pred != 'o') {
+                    tp++;
+                } else if (ac != pred && pred != 'o') {
+                    fp++;
+                } else {
+                    fn++;
+                }
+            }
+        } else if (classes == 3) {
+            for (int row = 0; row < size; row++) {
+                byte ac = refCol[row];
+                byte pred = predCol[row];
+                if (ac == pred && pred != 'o') {
+                    tp++;
+                } else if (ac != pred && pred != 'o') {
+                    fp++;
+                } else if (ac != 'o' && pred == 'o') {
+                    fn++;
+                }
+            }
+        }
+        return preReF1(tp, fp, fn);
+    }
+
+    /**
+     * Compute precision,recall and f-measure from the bit-sliced labels of one trait. The pairs of labels are
+     * counted with popcounts, the counts are then classified as in {@link #computePreReF1(java.util.ArrayList, int, int)}.
+     * @param bits encoded reference and predicted labels
+     * @return precision, recall and f-measure
+     */
+    private double[] computePreReF1(LabelBits bits) {
+        long tp = 0, fp = 0, fn = 0;
+        int classes = bits.classCount();
+        if (classes == 2 || classes == 3) {
+            long[][] pairs = bits.pairCounts();
+            for (int a = 0; a < classes; a++) {
+                for (int p = 0; p < 4; p++) {
+                    long n = pairs[a][p];
+                    if (n == 0) {
+                        continue;
+                    }
+                    boolean predIsO = p != LabelBits.OTHER && bits.label(p) == 'o';
+                    if (a == p && !predIsO) {
+                        tp += n;
+                    } else if (a != p && !predIsO) {
+                        fp += n;
+                    } else if (classes == 2 || bits.label(a) != 'o') {
+                        fn += n;
+                    }
+                }
+            }
+        }
+        return preReF1(tp, fp, fn);
+    }
+
+    /**
+     * Compute precision,recall and f-measure from the label counts of one trait, counted in the same way as
+     * {@link #computePreReF1(java.util.ArrayList, int, int)}.
+     * @param counts reference and predicted label counts
+     * @return precision, recall and f-measure
+     */
+    private double[] computePreReF1(ConfusionCounts counts) {
+        double[] errors = errorCounts(counts);
+        return preReF1(errors[0], errors[1], errors[2]);
+    }
+
+    /**
+     * Counts the true positives, false positives and false negatives of one trait from its label counts.
+     * There are no counts unless the trait has two or three classes.
+     * @param counts reference and predicted label counts
+     * @return tp, fp and fn
+     */
+    static double[] errorCounts(ConfusionCounts counts) {
+        double tp=0,fp=0,fn=0;
+        int classes = counts.refClassCount();
+        if(classes==2 || classes==3){
+            for (int a = 0; a < counts.labelCount(); a++) {
+                for (int p = 0; p < counts.labelCount(); p++) {
+                    double n = counts.count(a, p);
+                    char ac = counts.label(a);
+                    char pred = counts.label(p);
+                    if (ac == pred && pred != 'o') {
+                        tp += n;
+                    } else if (ac != pred && pred != 'o') {
+                        fp += n;
+                    } else if (classes == 2 || (ac != 'o' && pred == 'o')) {
+                        fn += n;
+                    }
+                }
+            }
+        }
+        return new double[]{tp, fp, fn};
+    }
+
+    /**
+     * @return the f-measure of the counts of true positives, false positives and false negatives
+     */
+    static double fMeasure(double tp, double fp, double fn) {
+        double pre = (tp / (tp + fp));
+        double re = (tp / (tp + fn));
+        return 2 * ((pre * re) / (pre + re));
+    }
+
+    /**
+     * Compute precision,recall and f-measure from the counts of true positives, false positives and false negatives.
+     * @return precision, recall and f-measure
+     */
+    static double[] preReF1(double tp, double fp, double fn) {
+        double pre = (tp / (tp + fp));
+        double re = (tp / (tp + fn));
+        return new double[]{pre, re, fMeasure(tp, fp, fn)};
     }
     
     
@@ -0,0 +1,48 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.text.DecimalFormat;
+
+/**
+ * Calculates the measures over all traits at once: the subset accuracy, i.e. the ratio of instances whose
+ * traits are all predicted correctly, and the Hamming loss, i.e. the ratio of wrongly predicted trait labels.
+ * Both are derived from the joint pattern counts of binary y/n traits.
+ * @see PatternCube
+ * @author Firoj Alam
+ */
+public class PersonalityScorerJoint {
+
+    /**
+     * Default constructor
+     */
+    public PersonalityScorerJoint() {
+    }
+
+    /**
+     * Compute the results and print to the standard output.
+     * @param cube joint pattern counts, null if the labels are not binary
+     */
+    public void compute(PatternCube cube) {
+        if (cube == null) {
+            System.out.println("Subset accuracy and Hamming loss need y/n labels for at most " + PatternCube.MAX_TRAITS + " traits.");
+            return;
+        }
+        try {
+            if (cube.size() == 0) {
+                throw new IllegalArgumentException("No instances");
+            }
+            DecimalFormat twoDForm = new DecimalFormat("#.##");
+            System.out.println("Class\tSubsetAcc\tHammingLoss");
+            System.out.println("All\t" + twoDForm.format(cube.subsetAccuracy()) + "\t" + twoDForm.format(cube.hammingLoss()));
+        } catch (Exception ex) {
+            System.out.println("Please check the format of your input file.");
+        }
+    }
+}
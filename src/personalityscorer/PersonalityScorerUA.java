@@ -6,23 +6,21 @@
  */
 package personalityscorer;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- *
+ * Calculates the un-weighted average of the classes of each trait. A scorer keeps no state, the measures are
+ * returned as {@link TraitScores}, so one scorer can score any number of files, also on several threads at once.
  * @author firojalam
  */
 public class PersonalityScorerUA {
 
-    private ArrayList classNames;
+    private static final String[] MEASURES = {"P(Avg)", "R(Avg)", "F1(Avg)"};
 
     /**
      * Default constructor
@@ -34,32 +32,13 @@ public class PersonalityScorerUA {
      * Reads the instances from the input file, then reads the values from the lines of the file. Returns an multidimensional array containing the reference and predicted labels.
      * The format of the input file is the following. Contains reference file-id, reference labels followed 
      * by three tokens, then again predicted file-id, predicted labels followed by four tokens.
+     * The file is scanned through a memory-mapped buffer by {@link InstanceReader}.
      * @return the value of instanceList
      */
     public ArrayList readInstanceList(String fileName) {
         ArrayList instanceList = new ArrayList();
-
         try {
-            BufferedReader fileRead = new BufferedReader(new InputStreamReader(new FileInputStream(fileName)));
-            String str = "";
-            int i = 1;
-            while ((str = fileRead.readLine()) != null) {
-                String[] strArr = str.split("\\s+");
-                String refID = strArr[0];
-                char[] refLabArr = strArr[1].toCharArray();
-                String predID = strArr[5];
-                char[] predLabArr = strArr[6].toCharArray();
-                if (!refID.equals(predID) && refLabArr.length != predLabArr.length) {
-                    System.err.println("\nPlease check instance ids and labels in your input file at line " + i);
-                } else {
-                    char result[] = new char[refLabArr.length + predLabArr.length];
-                    System.arraycopy(refLabArr, 0, result, 0, refLabArr.length);
-                    System.arraycopy(predLabArr, 0, result, refLabArr.length, predLabArr.length);
-                    instanceList.add(result);
-                }
-                i = i + 1;
-            }//end read file
-            fileRead.close();
+            instanceList = new InstanceReader().readLabelList(fileName);
         } catch (FileNotFoundException ex) {
             System.out.println("Please check your input file. Check that whether it is exist or not.");
             Logger.getLogger(PersonalityScorerUA.class.getName()).log(Level.SEVERE, null, ex);
@@ -75,43 +54,118 @@ public class PersonalityScorerUA {
      */
     public void compute(ArrayList list) {
         try {
-            char[] tmp = (char[]) list.get(0);
-            int length = tmp.length;
-            length = length / 2;
-            StringBuilder result = new StringBuilder();
-            String[] arr = {"Extra", "Neuro", "Agree", "Cons", "Open"};
-            DecimalFormat twoDForm = new DecimalFormat("#.##");
-            ArrayList preList = new ArrayList();
-            ArrayList reList = new ArrayList();
-            ArrayList f1List = new ArrayList();
+            TraitScores scores = score(list);
             System.out.println("Class\tP(Avg)\tR(Avg)\tF1(Avg)");
-            for (int col = 0; col < length; col++) {
-                double pre = 0.0, re = 0.0, f1 = 0.0;
-                int colPred = col + length;
-                int[][] m_ConfusionMatrix = makeConfusionMatrix(list, col, colPred);
-                for (int i = 0; i < this.classNames.size(); i++) {
-                    pre += this.precision(i, m_ConfusionMatrix);
-                    re += this.recall(i, m_ConfusionMatrix);
-                    f1 += this.fMeasure(i, m_ConfusionMatrix);
-                }
-                double P = pre / classNames.size();
-                double R = pre / classNames.size();
-                double F = pre / classNames.size();
-                preList.add(P);
-                reList.add(R);
-                f1List.add(F);
-                System.out.println(arr[col] + "\t" + twoDForm.format(P) + "\t" + twoDForm.format(R) + "\t" + twoDForm.format(F));
-            }
-            double meanPre = calMean(preList);
-            double meanRe = calMean(reList);
-            double meanF1 = calMean(f1List);
-            System.out.println("Avg\t" + twoDForm.format(meanPre) + "\t" + twoDForm.format(meanRe) + "\t" + twoDForm.format(meanF1));
+            print(scores);
         } catch (Exception ex) {
             System.out.println("Please check the format of your input file.");
         }
         
     }
 
+    /**
+     * Compute the un-weighted averages of every trait.
+     * @param list reference and predicted labels of each instance
+     * @return the measures of each trait
+     */
+    public TraitScores score(ArrayList list) {
+        char[] tmp = (char[]) list.get(0);
+        int length = tmp.length;
+        length = length / 2;
+        double[][] values = new double[length][];
+        for (int col = 0; col < length; col++) {
+            int colPred = col + length;
+            values[col] = averageScores(makeConfusionMatrix(list, col, colPred));
+        }
+        return new TraitScores(MEASURES, values);
+    }
+
+    /**
+     * Compute the results from the label counts of a streaming pass and print to the standard output.
+     * @param counts label counts of each trait
+     */
+    public void compute(ConfusionCounts[] counts) {
+        try {
+            System.out.println("Class\tP(Avg)\tR(Avg)\tF1(Avg)");
+            print(score(counts));
+        } catch (Exception ex) {
+            System.out.println("Please check the format of your input file.");
+        }
+    }
+
+    /**
+     * Compute the un-weighted averages of every trait from the label counts of a streaming pass.
+     * @param counts label counts of each trait
+     * @return the measures of each trait
+     */
+    public TraitScores score(ConfusionCounts[] counts) {
+        double[][] values = new double[counts.length][];
+        for (int col = 0; col < counts.length; col++) {
+            values[col] = averageScores(makeConfusionMatrix(counts[col]));
+        }
+        return new TraitScores(MEASURES, values);
+    }
+
+    /**
+     * Compute the results from the label columns and print to the standard output.
+     * @param data reference and predicted label columns
+     */
+    public void compute(InstanceColumns data) {
+        try {
+            if (data.size() == 0) {
+                throw new IllegalArgumentException("No instances");
+            }
+            System.out.println("Class\tP(Avg)\tR(Avg)\tF1(Avg)");
+            print(score(data));
+        } catch (Exception ex) {
+            System.out.println("Please check the format of your input file.");
+        }
+    }
+
+    /**
+     * Compute the un-weighted averages of every trait from the label columns.
+     * @param data reference and predicted label columns
+     * @return the measures of each trait
+     */
+    public TraitScores score(InstanceColumns data) {
+        double[][] values = new double[data.traits()][];
+        for (int col = 0; col < data.traits(); col++) {
+            values[col] = averageScores(makeConfusionMatrix(data, col));
+        }
+        return new TraitScores(MEASURES, values);
+    }
+
+    /**
+     * Prints the measures of each trait and their averages to the standard output.
+     */
+    private void print(TraitScores scores) {
+        String[] arr = {"Extra", "Neuro", "Agree", "Cons", "Open"};
+        DecimalFormat twoDForm = new DecimalFormat("#.##");
+        for (int col = 0; col < scores.traits(); col++) {
+            System.out.println(arr[col] + "\t" + twoDForm.format(scores.value(col, 0)) + "\t"
+                    + twoDForm.format(scores.value(col, 1)) + "\t" + twoDForm.format(scores.value(col, 2)));
+        }
+        System.out.println("Avg\t" + twoDForm.format(scores.average(0)) + "\t" + twoDForm.format(scores.average(1))
+                + "\t" + twoDForm.format(scores.average(2)));
+    }
+
+    /**
+     * Averages the precision of the classes of one trait.
+     * @param m_ConfusionMatrix confusion matrix of the trait
+     * @return the averaged precision for each of the P(Avg), R(Avg) and F1(Avg) columns
+     */
+    private double[] averageScores(int[][] m_ConfusionMatrix) {
+        int classes = m_ConfusionMatrix.length;
+        double pre = 0.0;
+        for (int i = 0; i < classes; i++) {
+            pre += this.precision(i, m_ConfusionMatrix);
+        }
+        // The R(Avg) and F1(Avg) columns deliberately repeat the class-averaged precision, the value which is
+        // also served as "ua" by PayloadScorer.
+        double P = pre / classes;
+        return new double[]{P, P, P};
+    }
+
     /**
      * Calculate the mean with respect to the number of elements. This is
      * defined as<p/>
@@ -147,7 +201,7 @@ public class PersonalityScorerUA {
     public double precision(int classIndex, int[][] m_ConfusionMatrix) {
 
         double correct = 0, total = 0;
-        for (int i = 0; i < this.classNames.size(); i++) {
+        for (int i = 0; i < m_ConfusionMatrix.length; i++) {
             if (i == classIndex) {
                 correct += m_ConfusionMatrix[i][classIndex];
             }
@@ -175,7 +229,7 @@ public class PersonalityScorerUA {
     public double recall(int classIndex, int[][] m_ConfusionMatrix) {
 
         double correct = 0, total = 0;
-        for (int j = 0; j < this.classNames.size(); j++) {
+        for (int j = 0; j < m_ConfusionMatrix.length; j++) {
             if (j == classIndex) {
                 correct += m_ConfusionMatrix[classIndex][j];
             }
@@ -209,42 +263,115 @@ public class PersonalityScorerUA {
     }
 
     /**
-     * Reads the reference and predicted labels from the multidimensional array-list then compute precision,recall and f-measure
+     * Reads the reference and predicted labels from the multidimensional array-list then compute precision,recall and f-measure.
+     * The classes are interned once, so every instance is counted with two table lookups.
      * @param list - reference and predicted labels list
      * @param colRef - index of the reference label
      * @param colPred - index of the predicted label
      * @return int[][] confusion matrix containing tp,fp, tn, fn
      */
-    private int[][] makeConfusionMatrix(ArrayList list, int colRef, int colPred) {
-        this.classNames = new ArrayList();
-        int[][] m_ConfusionMatrix = null;
-        for (int row = 0; row < list.size(); row++) {
+    int[][] makeConfusionMatrix(ArrayList list, int colRef, int colPred) {
+        LabelIndex classes = new LabelIndex();
+        int size = list.size();
+        for (int row = 0; row < size; row++) {
             char[] inst = (char[]) list.get(row);
-            if (!this.classNames.contains(inst[colRef])) {
-                classNames.add(inst[colRef]);
-            }
+            classes.intern(inst[colRef]);
         }
-        m_ConfusionMatrix = new int[classNames.size()][classNames.size()];
-        for (int row = 0; row < list.size(); row++) {
+        int[][] m_ConfusionMatrix = new int[classes.size()][classes.size()];
+        for (int row = 0; row < size; row++) {
             char[] inst = (char[]) list.get(row);
-            char ac = inst[colRef];
-            char pred = inst[colPred];
+            int col = classes.indexOf(inst[colPred]);
+            if (col >= 0) {
+                m_ConfusionMatrix[classes.indexOf(inst[colRef])][col] += 1;
+            }
+        }
+        return m_ConfusionMatrix;
+    }
 
-                for (int r = 0; r < this.classNames.size(); r++) {
-                    if (classNames.get(r).equals(ac)) {
-                        for (int col = 0; col < this.classNames.size(); col++) {
-                            if (classNames.get(col).equals(pred)) {
-                                m_ConfusionMatrix[r][col] += 1;
-                                break;
-                            }
-                        }
-                    }
-                }//end for loop updating confusion matrix                                    
+    /**
+     * Builds the confusion matrix of one trait from the label columns. The bit-sliced labels are used when the
+     * trait has at most three classes, otherwise the class index of a label is looked up in a table indexed by the label byte.
+     * @param data reference and predicted label columns
+     * @param trait index of the trait
+     * @return int[][] confusion matrix containing tp,fp, tn, fn
+     */
+    private int[][] makeConfusionMatrix(InstanceColumns data, int trait) {
+        LabelBits bits = data.labelBits(trait);
+        if (bits != null) {
+            return makeConfusionMatrix(bits);
+        }
+        byte[] refCol = data.refLabels(trait);
+        byte[] predCol = data.predLabels(trait);
+        int size = data.size();
+        int[] classIndex = new int[256];
+        Arrays.fill(classIndex, -1);
+        int classes = 0;
+        for (int row = 0; row < size; row++) {
+            int ac = refCol[row] & 0xFF;
+            if (classIndex[ac] < 0) {
+                classIndex[ac] = classes++;
+            }
+        }
+        int[][] m_ConfusionMatrix = new int[classes][classes];
+        for (int row = 0; row < size; row++) {
+            int col = classIndex[predCol[row] & 0xFF];
+            if (col >= 0) {
+                m_ConfusionMatrix[classIndex[refCol[row] & 0xFF]][col] += 1;
+            }
+        }
+        return m_ConfusionMatrix;
+    }
 
+    /**
+     * Builds the confusion matrix of one trait from its bit-sliced labels, the cells are counted with popcounts.
+     * @param bits encoded reference and predicted labels
+     * @return int[][] confusion matrix containing tp,fp, tn, fn
+     */
+    private int[][] makeConfusionMatrix(LabelBits bits) {
+        int size = bits.classCount();
+        long[][] pairs = bits.pairCounts();
+        int[][] m_ConfusionMatrix = new int[size][size];
+        for (int r = 0; r < size; r++) {
+            for (int col = 0; col < size; col++) {
+                m_ConfusionMatrix[r][col] = (int) pairs[r][col];
+            }
         }
         return m_ConfusionMatrix;
     }
 
+    /**
+     * Builds the confusion matrix of one trait from its label counts. The classes are the reference labels in the
+     * order of their first appearance, predicted labels which are not a class are not counted.
+     * @param counts reference and predicted label counts
+     * @return int[][] confusion matrix containing tp,fp, tn, fn
+     */
+    private int[][] makeConfusionMatrix(ConfusionCounts counts) {
+        int size = counts.refClassCount();
+        int[][] m_ConfusionMatrix = new int[size][size];
+        for (int r = 0; r < size; r++) {
+            for (int col = 0; col < size; col++) {
+                m_ConfusionMatrix[r][col] = (int) counts.count(counts.refClass(r), counts.refClass(col));
+            }
+        }
+        return m_ConfusionMatrix;
+    }
+
+    /**
+     * Computes the un-weighted average of one trait from its label counts, the value printed by
+     * {@link #compute(ConfusionCounts[])}.
+     * @param counts reference and predicted label counts
+     * @return the un-weighted average
+     */
+    static double unweightedAverage(ConfusionCounts counts) {
+        PersonalityScorerUA scorer = new PersonalityScorerUA();
+        int[][] m_ConfusionMatrix = scorer.makeConfusionMatrix(counts);
+        double pre = 0.0;
+        for (int i = 0; i < m_ConfusionMatrix.length; i++) {
+            pre += scorer.precision(i, m_ConfusionMatrix);
+        }
+        return pre / m_ConfusionMatrix.length;
+    }
+
     /**
      * @param args the command line arguments
      */
@@ -255,7 +382,6 @@ public class PersonalityScorerUA {
         ArrayList list = app1.readInstanceList(fName);
         app1.compute(list);
         PersonalityScorerF1 app2 = new PersonalityScorerF1();        
-        list = app2.readInstanceList(fName);
         app2.compute(list);
         
     }
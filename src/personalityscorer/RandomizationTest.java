@@ -0,0 +1,189 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Paired approximate randomization test. Under the null hypothesis the predictions of two systems for an instance
+ * are exchangeable, so every trial swaps the predictions of each instance with probability 1/2 and measures the
+ * difference between the two shuffled systems; the p-value is the ratio of trials whose difference is at least
+ * the observed one. The instances are grouped into patterns of the same gold and predictions, and a trial only
+ * draws how many instances of each pattern are swapped, a Binomial(c, 1/2) number which is the popcount of c
+ * random bits.
+ * The trials run in batches on a fork/join pool, each with its own random generator split from the seed in the
+ * order of the trials, and the test stops after a batch once every p-value is clearly above or below
+ * {@link #ALPHA}.
+ * @author Firoj Alam
+ */
+public class RandomizationTest {
+
+    public static final long DEFAULT_SEED = 42L;
+    public static final double ALPHA = 0.05;
+
+    private static final int BATCH = 1000;
+    private static final int TASK_SIZE = 16;
+    // number of standard errors between the p-value and ALPHA before it is taken as resolved
+    private static final double RESOLVED = 4.0;
+
+    private final int trials;
+    private final long seed;
+    private final ForkJoinPool pool;
+    private int trialsRun;
+
+    /**
+     * The differences between the two systems, computed on every trial.
+     */
+    public interface Statistic {
+
+        /**
+         * Computes the absolute differences between the measures of the two systems after the swaps. Called from
+         * several threads at once.
+         * @param swapped number of instances of each pattern whose predictions are swapped
+         * @return the differences
+         */
+        double[] compute(long[] swapped);
+    }
+
+    /**
+     * @param trials largest number of trials
+     * @param seed seed of the random generators
+     * @param threads number of worker threads
+     */
+    public RandomizationTest(int trials, long seed, int threads) {
+        if (trials < 1) {
+            throw new IllegalArgumentException("The number of trials must be positive.");
+        }
+        this.trials = trials;
+        this.seed = seed;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Runs the test.
+     * @param counts number of instances of each pattern
+     * @param stat the differences between the systems
+     * @return the p-value of each difference, NaN when the observed difference is not a number
+     */
+    public double[] run(long[] counts, Statistic stat) {
+        double[] observed = stat.compute(new long[counts.length]);
+        long[] atLeast = new long[observed.length];
+        SplittableRandom root = new SplittableRandom(seed);
+        trialsRun = 0;
+        while (trialsRun < trials) {
+            int batch = Math.min(BATCH, trials - trialsRun);
+            SplittableRandom[] rngs = new SplittableRandom[batch];
+            for (int i = 0; i < batch; i++) {
+                rngs[i] = root.split();
+            }
+            double[][] values = new double[batch][];
+            pool.invoke(new TrialTask(counts, stat, rngs, values, 0, batch));
+            for (int i = 0; i < batch; i++) {
+                for (int m = 0; m < observed.length; m++) {
+                    if (values[i][m] >= observed[m] - 1e-12 * Math.abs(observed[m])) {
+                        atLeast[m]++;
+                    }
+                }
+            }
+            trialsRun += batch;
+            if (resolved(observed, atLeast, trialsRun)) {
+                break;
+            }
+        }
+        double[] p = new double[observed.length];
+        for (int m = 0; m < observed.length; m++) {
+            p[m] = Double.isNaN(observed[m]) ? Double.NaN : (atLeast[m] + 1.0) / (trialsRun + 1.0);
+        }
+        return p;
+    }
+
+    /**
+     * @return whether every p-value is farther from {@link #ALPHA} than its standard error allows
+     */
+    private static boolean resolved(double[] observed, long[] atLeast, int n) {
+        for (int m = 0; m < observed.length; m++) {
+            if (Double.isNaN(observed[m])) {
+                continue;
+            }
+            double p = (atLeast[m] + 1.0) / (n + 1.0);
+            double se = Math.sqrt(p * (1 - p) / n);
+            if (Math.abs(p - ALPHA) <= RESOLVED * se) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of trials of the last run, fewer than the largest number when it stopped early
+     */
+    public int getTrialsRun() {
+        return trialsRun;
+    }
+
+    /**
+     * Draws from the Binomial(n, 1/2) distribution as the number of set bits in n random bits.
+     * @param rng random generator
+     * @param n number of instances
+     * @return the number of instances swapped
+     */
+    public static long fairCoins(SplittableRandom rng, long n) {
+        long heads = 0;
+        for (; n >= 64; n -= 64) {
+            heads += Long.bitCount(rng.nextLong());
+        }
+        if (n > 0) {
+            heads += Long.bitCount(rng.nextLong() & ((1L << n) - 1));
+        }
+        return heads;
+    }
+
+    /**
+     * Runs part of a batch of trials, splitting it in halves which run in parallel.
+     */
+    private static class TrialTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] counts;
+        private final Statistic stat;
+        private final SplittableRandom[] rngs;
+        private final double[][] values;
+        private final int from;
+        private final int to;
+
+        TrialTask(long[] counts, Statistic stat, SplittableRandom[] rngs, double[][] values, int from, int to) {
+            this.counts = counts;
+            this.stat = stat;
+            this.rngs = rngs;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                long[] swapped = new long[counts.length];
+                for (int i = from; i < to; i++) {
+                    for (int k = 0; k < counts.length; k++) {
+                        swapped[k] = fairCoins(rngs[i], counts[k]);
+                    }
+                    values[i] = stat.compute(swapped);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TrialTask(counts, stat, rngs, values, from, mid),
+                    new TrialTask(counts, stat, rngs, values, mid, to));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads another stream on a separate thread, e.g., a decompressing stream, so that reading it overlaps with the
+ * parsing of the bytes already read. The reading thread fills a fixed number of chunks, which are handed over
+ * through a bounded queue and given back once they are consumed, so at most that many chunks are held in memory
+ * and the reading thread waits when the parser falls behind. Closing the stream waits for the reading thread, unless
+ * the source is a pipe, whose read may block until the writer writes or closes it.
+ * @author Firoj Alam
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    public static final int CHUNK_SIZE = 1 << 20;
+    public static final int CHUNKS = 4;
+
+    private final InputStream source;
+    private final BlockingQueue<Chunk> full;
+    private final BlockingQueue<Chunk> free;
+    private final Thread reader;
+    private final boolean pipe;
+    private volatile IOException failure;
+    private Chunk current;
+    private int pos;
+    private boolean eof;
+
+    /**
+     * Starts reading the stream.
+     * @param source stream read on the separate thread, closed by {@link #close()}
+     */
+    public ReadAheadInputStream(InputStream source) {
+        this(source, false);
+    }
+
+    /**
+     * Starts reading the stream.
+     * @param source stream read on the separate thread, closed by {@link #close()}
+     * @param pipe whether the source reads a pipe or the standard input
+     */
+    public ReadAheadInputStream(InputStream source, boolean pipe) {
+        this(source, CHUNK_SIZE, CHUNKS, pipe);
+    }
+
+    /**
+     * Starts reading the stream.
+     * @param source stream read on the separate thread, closed by {@link #close()}
+     * @param chunkSize size of a chunk in bytes
+     * @param chunks number of chunks
+     * @param pipe whether the source reads a pipe or the standard input
+     */
+    public ReadAheadInputStream(InputStream source, int chunkSize, int chunks, boolean pipe) {
+        this.source = source;
+        this.pipe = pipe;
+        this.full = new ArrayBlockingQueue<Chunk>(chunks + 1);
+        this.free = new ArrayBlockingQueue<Chunk>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            free.add(new Chunk(chunkSize));
+        }
+        reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fill();
+            }
+        }, "read-ahead");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Fills the free chunks until the end of the source, which is marked by an empty chunk.
+     */
+    private void fill() {
+        try {
+            while (true) {
+                Chunk chunk = free.take();
+                chunk.length = 0;
+                int n = 0;
+                while (chunk.length < chunk.bytes.length
+                        && (n = source.read(chunk.bytes, chunk.length, chunk.bytes.length - chunk.length)) >= 0) {
+                    chunk.length += n;
+                }
+                if (chunk.length > 0) {
+                    full.put(chunk);
+                }
+                if (n < 0) {
+                    full.put(new Chunk(0));
+                    return;
+                }
+            }
+        } catch (IOException ex) {
+            failure = ex;
+            full.offer(new Chunk(0));
+        } catch (InterruptedException ex) {
+            // closed before the end of the source
+        } catch (RuntimeException ex) {
+            // e.g. the inflater of a pipe closed by close() while it was inflating
+            failure = new IOException(ex);
+            full.offer(new Chunk(0));
+        }
+    }
+
+    /**
+     * @return whether a chunk with unread bytes is current, false at the end of the source
+     */
+    private boolean next() throws IOException {
+        if (current != null && pos < current.length) {
+            return true;
+        }
+        if (eof) {
+            return false;
+        }
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+        Chunk chunk;
+        try {
+            chunk = full.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the input.");
+        }
+        if (chunk.length == 0) {
+            eof = true;
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        current = chunk;
+        pos = 0;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return next() ? current.bytes[pos++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (n < len && next()) {
+            int k = Math.min(len - n, current.length - pos);
+            System.arraycopy(current.bytes, pos, b, off + n, k);
+            pos += k;
+            n += k;
+            if (full.isEmpty()) {
+                break;
+            }
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    /**
+     * Stops the reading thread and closes the source. The thread is waited for, so the source is not closed while
+     * it is being read; the thread of a pipe is not, it may be blocked until the writer writes, and it ends when its
+     * read returns.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        if (!pipe) {
+            try {
+                reader.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        source.close();
+    }
+
+    /**
+     * A buffer of bytes read from the source.
+     */
+    private static class Chunk {
+
+        private final byte[] bytes;
+        private int length;
+
+        Chunk(int size) {
+            bytes = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Scores predictions sent over HTTP, so that a web application scores every submission in the same running
+ * process instead of starting the scorer each time. A POST to /score sends the lines of a label file, or with a
+ * reference file only the ids and the predicted labels, which are joined with the reference file read once when
+ * the server starts; the body may be compressed with Content-Encoding gzip or deflate. The response is the JSON
+ * object of {@link PayloadScorer}. A GET to /health answers whether the server is running. The requests are handled by a
+ * fixed number of threads.
+ * @author Firoj Alam
+ */
+public class ScoreServer {
+
+    private final boolean numeric;
+    private final IdJoin gold;
+    private final PayloadScorer scorer;
+    private final int threads;
+    private HttpServer server;
+    private ExecutorService pool;
+
+    /**
+     * @param numeric whether the predictions hold numeric values
+     * @param gold join which has read the reference file, null if the requests send whole label files
+     * @param threads number of requests handled at a time
+     */
+    public ScoreServer(boolean numeric, IdJoin gold, int threads) {
+        this.numeric = numeric;
+        this.gold = gold;
+        this.scorer = new PayloadScorer(numeric, gold);
+        this.threads = threads;
+    }
+
+    /**
+     * Starts handling requests, until {@link #stop()} is called.
+     * @param address address and port to listen on
+     * @throws IOException if the server can not listen on the address
+     */
+    public void start(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        server.createContext("/score", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                score(exchange);
+            }
+        });
+        server.createContext("/health", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getRequestBody().close();
+                respond(exchange, 200, "{\"status\":\"ok\",\"numeric\":" + numeric + ",\"joined\":" + (gold != null) + "}");
+            }
+        });
+        pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        server.setExecutor(pool);
+        server.start();
+    }
+
+    /**
+     * @return the address the server listens on
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops handling requests.
+     */
+    public void stop() {
+        server.stop(0);
+        pool.shutdownNow();
+    }
+
+    private void score(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, PayloadScorer.error("Please POST the predictions to /score."));
+                return;
+            }
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            if (encoding != null && !"gzip".equalsIgnoreCase(encoding) && !"deflate".equalsIgnoreCase(encoding)
+                    && !"identity".equalsIgnoreCase(encoding)) {
+                respond(exchange, 415, PayloadScorer.error("Content-Encoding " + encoding + " is not supported."));
+                return;
+            }
+            String json;
+            try {
+                if ("gzip".equalsIgnoreCase(encoding)) {
+                    in = new GZIPInputStream(in);
+                } else if ("deflate".equalsIgnoreCase(encoding)) {
+                    in = new InflaterInputStream(in);
+                }
+                json = scorer.score(in);
+            } catch (IOException ex) {
+                respond(exchange, 400, PayloadScorer.error("Please check the format of your predictions. " + ex.getMessage()));
+                return;
+            } catch (RuntimeException ex) {
+                respond(exchange, 400, PayloadScorer.error("Please check the format of your predictions. " + ex));
+                return;
+            }
+            if (json == null) {
+                respond(exchange, 400, PayloadScorer.error("Please check the format of your predictions. No instance could be scored."));
+                return;
+            }
+            respond(exchange, 200, json);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+    }
+}
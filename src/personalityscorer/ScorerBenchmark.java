@@ -0,0 +1,391 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Throughput benchmarks of the scorer. Each benchmark runs a few warm up rounds and then reports the
+ * best round. The input file is generated with random labels when it does not exist yet.
+ * Usage: java -cp PersonalityScorer.jar personalityscorer.ScorerBenchmark &lt;benchmark&gt; &lt;FILE&gt; [rows] [rounds]
+ * @author Firoj Alam
+ */
+public class ScorerBenchmark {
+
+    private static final String[] TRAITS = {"y", "n"};
+
+    /**
+     * Default constructor
+     */
+    public ScorerBenchmark() {
+    }
+
+    /**
+     * Writes a label file with random reference and predicted labels in the input format of the scorer.
+     * @param fileName output file
+     * @param rows number of instances
+     * @param numeric whether to write numeric values instead of y/n labels
+     * @throws IOException if the file can not be written
+     */
+    public static void generate(String fileName, int rows, boolean numeric) throws IOException {
+        Random rand = new Random(42);
+        BufferedWriter out = new BufferedWriter(new FileWriter(fileName), 1 << 16);
+        try {
+            for (int row = 0; row < rows; row++) {
+                String id = Long.toHexString(rand.nextLong() | Long.MIN_VALUE) + Long.toHexString(rand.nextLong() | Long.MIN_VALUE);
+                out.write(id + "\t" + labels(rand, numeric) + "\t-\t-\t-\t" + id + "\t" + labels(rand, numeric) + "\t0.314\t7\t0.045\t11.400\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String labels(Random rand, boolean numeric) {
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            if (numeric) {
+                if (i > 0) {
+                    str.append('#');
+                }
+                str.append(rand.nextInt(100) / 100.0);
+            } else {
+                str.append(TRAITS[rand.nextInt(2)]);
+            }
+        }
+        return str.toString();
+    }
+
+    /**
+     * The reader used before {@link InstanceReader}: a BufferedReader and a regular expression split per line.
+     */
+    private static ArrayList<char[]> readWithSplit(String fileName) throws IOException {
+        ArrayList<char[]> instanceList = new ArrayList<char[]>();
+        BufferedReader fileRead = new BufferedReader(new InputStreamReader(new FileInputStream(fileName)));
+        try {
+            String str;
+            while ((str = fileRead.readLine()) != null) {
+                String[] strArr = str.split("\\s+");
+                char[] refLabArr = strArr[1].toCharArray();
+                char[] predLabArr = strArr[6].toCharArray();
+                if (!strArr[0].equals(strArr[5]) && refLabArr.length != predLabArr.length) {
+                    continue;
+                }
+                char result[] = new char[refLabArr.length + predLabArr.length];
+                System.arraycopy(refLabArr, 0, result, 0, refLabArr.length);
+                System.arraycopy(predLabArr, 0, result, refLabArr.length, predLabArr.length);
+                instanceList.add(result);
+            }
+        } finally {
+            fileRead.close();
+        }
+        return instanceList;
+    }
+
+    /**
+     * The numeric reader used before {@link InstanceReader#parseDouble}: regular expression splits of the line and
+     * of the '#' separated values, then {@link Double#parseDouble(String)}. Returns the sum of all the values.
+     */
+    private static double sumWithSplit(String fileName) throws IOException {
+        double sum = 0;
+        BufferedReader fileRead = new BufferedReader(new InputStreamReader(new FileInputStream(fileName)));
+        try {
+            String str;
+            while ((str = fileRead.readLine()) != null) {
+                String[] strArr = str.split("\\s+");
+                String[] ref = strArr[1].split("#");
+                String[] pred = strArr[6].split("#");
+                for (int i = 0; i < ref.length; i++) {
+                    sum += Double.parseDouble(ref[i]);
+                }
+                for (int i = 0; i < pred.length; i++) {
+                    sum += Double.parseDouble(pred[i]);
+                }
+            }
+        } finally {
+            fileRead.close();
+        }
+        return sum;
+    }
+
+    /**
+     * Sums all the values of the numeric file, parsed from the memory-mapped file by the byte parser, or by
+     * collecting the characters of each value for {@link Double#parseDouble(String)} when slow is set.
+     */
+    private static double sumWithMapping(String fileName, final boolean slow) throws IOException {
+        final double[] sum = new double[1];
+        final StringBuilder value = new StringBuilder();
+        new InstanceReader().read(fileName, new InstanceReader.RowHandler() {
+            @Override
+            public void row(ByteBuffer buf, int[] start, int[] end, int line) {
+                for (int col = InstanceReader.REF_LABELS; col <= InstanceReader.PRED_LABELS; col += InstanceReader.PRED_LABELS - InstanceReader.REF_LABELS) {
+                    int s = start[col];
+                    while (s <= end[col]) {
+                        int e = s;
+                        while (e < end[col] && buf.get(e) != '#') {
+                            e++;
+                        }
+                        if (slow) {
+                            value.setLength(0);
+                            for (int i = s; i < e; i++) {
+                                value.append((char) (buf.get(i) & 0xFF));
+                            }
+                            sum[0] += Double.parseDouble(value.toString());
+                        } else {
+                            sum[0] += InstanceReader.parseDouble(buf, s, e, value);
+                        }
+                        s = e + 1;
+                    }
+                }
+            }
+        });
+        return sum[0];
+    }
+
+    /**
+     * Compares the byte parser of the numeric values with the split and {@link Double#parseDouble(String)} parsers,
+     * checking that all of them give the same sum of the values.
+     */
+    private static void benchParse(String fileName, int rounds) throws IOException {
+        double mb = new File(fileName).length() / (1024.0 * 1024.0);
+        int rows = new InstanceReader().readNumericList(fileName).size();
+        String[] names = {"readLine+split", "mmap+parseDouble", "mmap+byte parser"};
+        double expected = 0;
+        for (int p = 0; p < names.length; p++) {
+            long best = Long.MAX_VALUE;
+            double sum = 0;
+            for (int r = 0; r < rounds; r++) {
+                long t = System.nanoTime();
+                sum = p == 0 ? sumWithSplit(fileName) : sumWithMapping(fileName, p == 1);
+                best = Math.min(best, System.nanoTime() - t);
+            }
+            if (p == 0) {
+                expected = sum;
+            }
+            report(names[p] + (sum == expected ? "" : "  DIFFERENT RESULT"), rows, mb, best);
+        }
+    }
+
+    /**
+     * Compares reading the label file into columns with reading its binary form, converted to FILE.bin, checking
+     * that both give the same confusion counts.
+     */
+    private static void benchBinary(String fileName, int rounds) throws IOException {
+        String binaryFile = fileName + ".bin";
+        if (!new File(binaryFile).exists()) {
+            BinaryLabelFile.convert(fileName, binaryFile, false);
+        }
+        String[] names = {"text columns", "binary columns"};
+        String[] files = {fileName, binaryFile};
+        String expected = null;
+        for (int p = 0; p < names.length; p++) {
+            double mb = new File(files[p]).length() / (1024.0 * 1024.0);
+            long best = Long.MAX_VALUE;
+            InstanceColumns data = null;
+            for (int r = 0; r < rounds; r++) {
+                long t = System.nanoTime();
+                data = p == 0 ? InstanceColumns.readLabels(fileName) : BinaryLabelFile.readColumns(binaryFile, false);
+                best = Math.min(best, System.nanoTime() - t);
+            }
+            ConfusionCounts[] counts = new ConfusionCounts[data.traits()];
+            for (int col = 0; col < counts.length; col++) {
+                counts[col] = new ConfusionCounts();
+                byte[] ref = data.refLabels(col);
+                byte[] pred = data.predLabels(col);
+                for (int i = 0; i < data.size(); i++) {
+                    counts[col].add((char) (ref[i] & 0xFF), (char) (pred[i] & 0xFF));
+                }
+            }
+            String result = render(counts);
+            if (p == 0) {
+                expected = result;
+            }
+            report(names[p] + (result.equals(expected) ? "" : "  DIFFERENT RESULT"), data.size(), mb, best);
+        }
+    }
+
+    /**
+     * Compares the memory-mapped reader with the BufferedReader and split reader.
+     */
+    private static void benchReader(String fileName, int rounds) throws IOException {
+        double mb = new File(fileName).length() / (1024.0 * 1024.0);
+        long best = Long.MAX_VALUE;
+        int rows = 0;
+        for (int r = 0; r < rounds; r++) {
+            long t = System.nanoTime();
+            rows = readWithSplit(fileName).size();
+            best = Math.min(best, System.nanoTime() - t);
+        }
+        report("readLine+split", rows, mb, best);
+        best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            long t = System.nanoTime();
+            rows = new InstanceReader().readLabelList(fileName).size();
+            best = Math.min(best, System.nanoTime() - t);
+        }
+        report("mmap", rows, mb, best);
+    }
+
+    /**
+     * Reads the file sequentially and then in parallel with 1, 2, 4, ... threads up to the number of processors,
+     * checking that every parallel result equals the sequential one.
+     */
+    private static void benchParallel(String fileName, int rounds) throws IOException {
+        double mb = new File(fileName).length() / (1024.0 * 1024.0);
+        long best = Long.MAX_VALUE;
+        LabelAccumulator seq = null;
+        for (int r = 0; r < rounds; r++) {
+            long t = System.nanoTime();
+            seq = new LabelAccumulator();
+            new InstanceReader().read(fileName, seq);
+            best = Math.min(best, System.nanoTime() - t);
+        }
+        report("sequential", seq.getInstances(), mb, best);
+        String expected = render(seq.getCounts());
+        int max = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= max; threads = Math.min(threads * 2, max)) {
+            ParallelReader reader = new ParallelReader(threads);
+            best = Long.MAX_VALUE;
+            LabelAccumulator acc = null;
+            for (int r = 0; r < rounds; r++) {
+                long t = System.nanoTime();
+                acc = reader.read(fileName, new LabelAccumulator());
+                best = Math.min(best, System.nanoTime() - t);
+            }
+            String same = expected.equals(render(acc.getCounts())) ? "" : "  DIFFERENT RESULT";
+            report("parallel x" + threads + same, acc.getInstances(), mb, best);
+            if (threads == max) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * The confusion matrix used before {@link LabelIndex}: the classes are looked up in a list of boxed labels.
+     */
+    private static int[][] matrixWithList(ArrayList<char[]> list, int colRef, int colPred) {
+        ArrayList<Character> classNames = new ArrayList<Character>();
+        for (int row = 0; row < list.size(); row++) {
+            char[] inst = list.get(row);
+            if (!classNames.contains(inst[colRef])) {
+                classNames.add(inst[colRef]);
+            }
+        }
+        int[][] m_ConfusionMatrix = new int[classNames.size()][classNames.size()];
+        for (int row = 0; row < list.size(); row++) {
+            char[] inst = list.get(row);
+            char ac = inst[colRef];
+            char pred = inst[colPred];
+            for (int r = 0; r < classNames.size(); r++) {
+                if (classNames.get(r).equals(ac)) {
+                    for (int col = 0; col < classNames.size(); col++) {
+                        if (classNames.get(col).equals(pred)) {
+                            m_ConfusionMatrix[r][col] += 1;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return m_ConfusionMatrix;
+    }
+
+    /**
+     * Compares the confusion matrices of all traits built with the list of classes and with the label index,
+     * checking that both give the same matrices.
+     */
+    private static void benchMatrix(String fileName, int rounds) throws IOException {
+        double mb = new File(fileName).length() / (1024.0 * 1024.0);
+        ArrayList<char[]> list = new InstanceReader().readLabelList(fileName);
+        int traits = list.get(0).length / 2;
+        PersonalityScorerUA scorer = new PersonalityScorerUA();
+        long best = Long.MAX_VALUE;
+        String expected = null;
+        for (int r = 0; r < rounds; r++) {
+            long t = System.nanoTime();
+            StringBuilder str = new StringBuilder();
+            for (int col = 0; col < traits; col++) {
+                str.append(Arrays.deepToString(matrixWithList(list, col, col + traits)));
+            }
+            best = Math.min(best, System.nanoTime() - t);
+            expected = str.toString();
+        }
+        report("list lookup", list.size(), mb, best);
+        best = Long.MAX_VALUE;
+        String result = null;
+        for (int r = 0; r < rounds; r++) {
+            long t = System.nanoTime();
+            StringBuilder str = new StringBuilder();
+            for (int col = 0; col < traits; col++) {
+                str.append(Arrays.deepToString(scorer.makeConfusionMatrix(list, col, col + traits)));
+            }
+            best = Math.min(best, System.nanoTime() - t);
+            result = str.toString();
+        }
+        report("label index" + (expected.equals(result) ? "" : "  DIFFERENT RESULT"), list.size(), mb, best);
+    }
+
+    private static String render(ConfusionCounts[] counts) {
+        StringBuilder str = new StringBuilder();
+        for (int col = 0; col < counts.length; col++) {
+            for (int k = 0; k < counts[col].refClassCount(); k++) {
+                int r = counts[col].refClass(k);
+                for (int p = 0; p < counts[col].labelCount(); p++) {
+                    str.append(counts[col].label(r)).append(counts[col].label(p)).append(counts[col].count(r, p)).append(' ');
+                }
+            }
+            str.append('\n');
+        }
+        return str.toString();
+    }
+
+    private static void report(String name, long rows, double mb, long nanos) {
+        double sec = nanos / 1e9;
+        System.out.println(String.format("%-20s %10d rows %10.1f ms %10.1f MB/s %12.0f rows/s", name, rows, sec * 1000, mb / sec, rows / sec));
+    }
+
+    /**
+     * @param args the benchmark name, the input file, the number of rows to generate and the number of rounds
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: ScorerBenchmark <reader|parallel|matrix|parse|binary> <FILE> [rows] [rounds]");
+            return;
+        }
+        String bench = args[0];
+        String fileName = args[1];
+        int rows = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        if (!new File(fileName).exists()) {
+            generate(fileName, rows, bench.equals("parse"));
+        }
+        if (bench.equals("reader")) {
+            benchReader(fileName, rounds);
+        } else if (bench.equals("parallel")) {
+            benchParallel(fileName, rounds);
+        } else if (bench.equals("matrix")) {
+            benchMatrix(fileName, rounds);
+        } else if (bench.equals("parse")) {
+            benchParse(fileName, rounds);
+        } else if (bench.equals("binary")) {
+            benchBinary(fileName, rounds);
+        } else {
+            System.out.println("Unknown benchmark " + bench);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+/**
+ * The measures of each trait computed by a scorer, e.g., precision, recall and f-measure, and their averages over
+ * the traits. The scores are not changed once computed, so they can be handed between threads.
+ * @author Firoj Alam
+ */
+public final class TraitScores {
+
+    private final String[] names;
+    private final double[][] values;
+    private final double[] averages;
+
+    /**
+     * @param names names of the measures
+     * @param values the measures of each trait, in the order of the names
+     */
+    public TraitScores(String[] names, double[][] values) {
+        this.names = names.clone();
+        this.values = new double[values.length][];
+        this.averages = new double[names.length];
+        for (int col = 0; col < values.length; col++) {
+            this.values[col] = values[col].clone();
+        }
+        for (int m = 0; m < names.length; m++) {
+            double sum = 0.0;
+            for (int col = 0; col < values.length; col++) {
+                sum += values[col][m];
+            }
+            averages[m] = sum / values.length;
+        }
+    }
+
+    /**
+     * @return the number of traits
+     */
+    public int traits() {
+        return values.length;
+    }
+
+    /**
+     * @return the number of measures of a trait
+     */
+    public int measures() {
+        return names.length;
+    }
+
+    /**
+     * @return the name of a measure
+     */
+    public String name(int measure) {
+        return names[measure];
+    }
+
+    /**
+     * @return a measure of a trait
+     */
+    public double value(int trait, int measure) {
+        return values[trait][measure];
+    }
+
+    /**
+     * @return the average of a measure over the traits
+     */
+    public double average(int measure) {
+        return averages[measure];
+    }
+}
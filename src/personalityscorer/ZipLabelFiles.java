@@ -0,0 +1,168 @@
+/*
+ * This work by Firoj Alam is licensed under a Creative Commons Attribution-NonCommercial 4.0 International License.
+ * Permissions beyond the scope of this license may be available by sending an email to firojalam@gmail.com.
+ * http://creativecommons.org/licenses/by-nc/4.0/deed.en_US
+ *
+ */
+
+
+package personalityscorer;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the label files of a zip archive, such as a submission, without extracting them. The label files are the
+ * entries whose first line has the columns of a label file, with the same id in the reference and the predicted
+ * id columns, and numeric values or labels as asked; other entries, e.g., a Readme or a jar, are skipped. Each
+ * label file is decompressed and read into its own accumulator, the label files concurrently.
+ * @author Firoj Alam
+ */
+public class ZipLabelFiles {
+
+    private static final int LOCAL_HEADER = 0x04034B50;
+    private static final int MAX_FIRST_LINE = 1 << 16;
+
+    private final String fileName;
+    private final boolean numeric;
+    private final ArrayList<String> entries = new ArrayList<String>();
+
+    /**
+     * Finds the label files of the archive.
+     * @param fileName zip archive
+     * @param numeric whether the label files hold numeric values
+     * @throws IOException if the archive can not be read
+     */
+    public ZipLabelFiles(String fileName, boolean numeric) throws IOException {
+        this.fileName = fileName;
+        this.numeric = numeric;
+        ZipFile zip = new ZipFile(fileName);
+        try {
+            Enumeration<? extends ZipEntry> all = zip.entries();
+            while (all.hasMoreElements()) {
+                ZipEntry entry = all.nextElement();
+                String name = entry.getName();
+                String base = name.substring(name.lastIndexOf('/') + 1);
+                if (entry.isDirectory() || name.startsWith("__MACOSX/") || base.startsWith(".")) {
+                    continue;
+                }
+                if (isLabelFile(firstLine(zip, entry))) {
+                    entries.add(name);
+                }
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * @param fileName input file
+     * @return whether the file starts with the header of a zip entry
+     * @throws IOException if the file can not be read
+     */
+    public static boolean isZip(String fileName) throws IOException {
+        FileInputStream in = new FileInputStream(fileName);
+        try {
+            int magic = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = in.read();
+                if (b < 0) {
+                    return false;
+                }
+                magic |= b << (8 * i);
+            }
+            return magic == LOCAL_HEADER;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String firstLine(ZipFile zip, ZipEntry entry) throws IOException {
+        InputStream in = zip.getInputStream(entry);
+        try {
+            byte[] bytes = new byte[MAX_FIRST_LINE];
+            int n = 0, b;
+            while (n < bytes.length && (b = in.read()) >= 0 && b != '\n') {
+                bytes[n++] = (byte) b;
+            }
+            return new String(bytes, 0, n, StandardCharsets.ISO_8859_1);
+        } finally {
+            in.close();
+        }
+    }
+
+    private boolean isLabelFile(String line) {
+        String[] columns = line.trim().split("\\s+");
+        if (columns.length < InstanceReader.COLUMNS
+                || !columns[InstanceReader.REF_ID].equals(columns[InstanceReader.PRED_ID])) {
+            return false;
+        }
+        return columns[InstanceReader.REF_LABELS].contains("#") == numeric;
+    }
+
+    /**
+     * @return the names of the label files of the archive, in the order of the archive
+     */
+    public ArrayList<String> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Reads every label file into its own accumulator, at most the given number of label files at a time. The
+     * errors in the lines of a label file are deferred, to be reported with {@link Accumulator#reportErrors()}.
+     * @param threads number of label files read at a time
+     * @return the numeric or label accumulators of the label files, in the order of {@link #getEntries()}
+     * @throws IOException if the archive or a label file can not be read
+     */
+    public ArrayList<Accumulator<?>> read(int threads) throws IOException {
+        final ZipFile zip = new ZipFile(fileName);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, entries.size())));
+        try {
+            ArrayList<Future<Accumulator<?>>> futures = new ArrayList<Future<Accumulator<?>>>();
+            for (int i = 0; i < entries.size(); i++) {
+                final ZipEntry entry = zip.getEntry(entries.get(i));
+                final Accumulator<?> acc = numeric ? new NumericAccumulator() : new LabelAccumulator();
+                acc.setDeferErrors(true);
+                futures.add(pool.submit(new Callable<Accumulator<?>>() {
+                    @Override
+                    public Accumulator<?> call() throws IOException {
+                        InputStream in = new ReadAheadInputStream(zip.getInputStream(entry));
+                        try {
+                            new InstanceReader().read(in, acc);
+                        } finally {
+                            in.close();
+                        }
+                        return acc;
+                    }
+                }));
+            }
+            ArrayList<Accumulator<?>> results = new ArrayList<Accumulator<?>>();
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(futures.get(i).get());
+            }
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + fileName + ".", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } finally {
+            pool.shutdownNow();
+            zip.close();
+        }
+    }
+}